@@ -29,6 +29,10 @@ package org.hisp.dhis.android.dashboard;
 import android.app.Application;
 import android.widget.Toast;
 
+import org.hisp.dhis.android.dashboard.sync.FullTextIndex;
+import org.hisp.dhis.android.dashboard.sync.OfflinePack;
+import org.hisp.dhis.android.dashboard.sync.SyncWatermarks;
+import org.hisp.dhis.android.dashboard.utils.ReportTableCache;
 import org.hisp.dhis.android.sdk.core.api.Dhis2;
 import org.hisp.dhis.android.sdk.core.network.APIException;
 
@@ -46,6 +50,10 @@ public final class DhisApplication extends Application {
         super.onCreate();
 
         Dhis2.init(getApplicationContext());
+        SyncWatermarks.init(getApplicationContext());
+        OfflinePack.init(getApplicationContext());
+        ReportTableCache.init(getApplicationContext());
+        FullTextIndex.init(getApplicationContext());
     }
 
     protected void showMessage(CharSequence message) {
@@ -28,30 +28,76 @@
 
 package org.hisp.dhis.android.dashboard;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
 import com.squareup.okhttp.HttpUrl;
 
 import org.hisp.dhis.android.dashboard.job.Job;
 import org.hisp.dhis.android.dashboard.job.JobExecutor;
 import org.hisp.dhis.android.dashboard.job.NetworkJob;
+import org.hisp.dhis.android.dashboard.sync.DashboardDeltaSync;
+import org.hisp.dhis.android.dashboard.sync.FullTextIndex;
+import org.hisp.dhis.android.dashboard.sync.OfflinePack;
+import org.hisp.dhis.android.dashboard.sync.SyncTransactions;
+import org.hisp.dhis.android.dashboard.sync.SyncWatermarks;
 import org.hisp.dhis.android.dashboard.ui.events.UiEvent;
+import org.hisp.dhis.android.dashboard.ui.fragments.dashboard.RemoteContentSearch;
 import org.hisp.dhis.android.dashboard.utils.EventBusProvider;
+import org.hisp.dhis.android.dashboard.utils.ReportTableCache;
 import org.hisp.dhis.android.sdk.core.api.Dhis2;
 import org.hisp.dhis.android.sdk.core.network.APIException;
 import org.hisp.dhis.android.sdk.core.persistence.models.common.meta.Credentials;
 import org.hisp.dhis.android.sdk.core.persistence.preferences.ResourceType;
 import org.hisp.dhis.android.sdk.models.user.UserAccount;
 
-public final class DhisService {
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+public final class DhisService implements SyncTransactions.Listener {
     public static final int LOG_IN = 1;
     public static final int CONFIRM_USER = 2;
     public static final int LOG_OUT = 3;
     public static final int SYNC_DASHBOARDS = 5;
     public static final int SYNC_INTERPRETATIONS = 6;
+    public static final int REFRESH_OFFLINE_PACK = 7;
+    public static final int INDEX_DASHBOARDS = 8;
+    public static final int INDEX_INTERPRETATIONS = 9;
+
+    /* on slow connections sync can take forever, so we are
+    giving up after some time in order to release the job slot */
+    private static final long SYNC_TIMEOUT = TimeUnit.MINUTES.toMillis(3);
+
+    /* local changes to dashboards are pushed in batches: each change postpones
+    sync by write back delay, but not more than max delay since the first change */
+    private static final long DEFAULT_WRITE_BACK_DELAY = TimeUnit.SECONDS.toMillis(3);
+    private static final long DEFAULT_WRITE_BACK_MAX_DELAY = TimeUnit.SECONDS.toMillis(15);
 
     private static DhisService mService;
 
+    private final Handler mHandler;
+    private final Runnable mWriteBack;
+
+    private long mWriteBackDelay;
+    private long mWriteBackMaxDelay;
+
+    /* uptime of the first change which is not synced yet, 0 if there are none */
+    private long mFirstPendingChange;
+
     private DhisService() {
-        // empty constructor
+        mHandler = new Handler(Looper.getMainLooper());
+        mWriteBack = new Runnable() {
+            @Override
+            public void run() {
+                flushDashboardChanges();
+            }
+        };
+
+        mWriteBackDelay = DEFAULT_WRITE_BACK_DELAY;
+        mWriteBackMaxDelay = DEFAULT_WRITE_BACK_MAX_DELAY;
+
+        SyncTransactions.register(this);
     }
 
     public static DhisService getInstance() {
@@ -64,7 +110,7 @@ public final class DhisService {
 
     public void logInUser(final HttpUrl serverUrl, final Credentials credentials) {
         JobExecutor.enqueueJob(new NetworkJob<UserAccount>(LOG_IN,
-                ResourceType.USERS) {
+                ResourceType.USERS, Job.Priority.HIGH) {
 
             @Override
             public UserAccount execute() throws APIException {
@@ -74,10 +120,21 @@ public final class DhisService {
     }
 
     public void logOutUser() {
-        JobExecutor.enqueueJob(new Job<UiEvent>(LOG_OUT) {
+        cancelScheduledDashboardsSync();
+
+        // data of the previous user must not be written back after clear()
+        JobExecutor.cancelJob(REFRESH_OFFLINE_PACK);
+        JobExecutor.cancelJob(INDEX_DASHBOARDS);
+        JobExecutor.cancelJob(INDEX_INTERPRETATIONS);
+        JobExecutor.enqueueJob(new Job<UiEvent>(LOG_OUT, Job.Priority.LOW) {
             @Override
             public UiEvent inBackground() {
                 Dhis2.logOut();
+                SyncWatermarks.getInstance().clear();
+                OfflinePack.getInstance().clear();
+                ReportTableCache.getInstance().clear();
+                FullTextIndex.getInstance().clear();
+                RemoteContentSearch.clearCache();
                 return new UiEvent(UiEvent.UiEventType.USER_LOG_OUT);
             }
 
@@ -90,7 +147,7 @@ public final class DhisService {
 
     public void confirmUser(final Credentials credentials) {
         JobExecutor.enqueueJob(new NetworkJob<UserAccount>(CONFIRM_USER,
-                ResourceType.USERS) {
+                ResourceType.USERS, Job.Priority.HIGH) {
 
             @Override
             public UserAccount execute() throws APIException {
@@ -99,42 +156,160 @@ public final class DhisService {
         });
     }
 
+    /**
+     * Pulls dashboards only if they have changed on server since the last sync,
+     * or if there are local changes to push.
+     */
     public void syncDashboardsAndContent() {
-        JobExecutor.enqueueJob(new NetworkJob<Object>(SYNC_DASHBOARDS,
-                ResourceType.DASHBOARDS) {
+        // pending changes will be pushed by this sync
+        cancelScheduledDashboardsSync();
+        JobExecutor.enqueueCoalescingJob(newSyncDashboardsJob(false));
+    }
+
+    /**
+     * Pushes local changes to server and pulls dashboards. If sync is already in progress,
+     * it will be repeated once after it finishes, in order to push changes made meanwhile.
+     */
+    public void syncDashboards() {
+        cancelScheduledDashboardsSync();
+        JobExecutor.enqueueCoalescingJob(newSyncDashboardsJob(true));
+    }
+
+    /**
+     * Should be called after each local change to dashboards, dashboard items or
+     * elements. Instead of syncing each change separately, changes made in quick
+     * succession are pushed to server by one sync. Has to be called on main thread.
+     */
+    public void scheduleDashboardsSync() {
+        DashboardDeltaSync.onLocalChange();
+
+        long now = SystemClock.uptimeMillis();
+        if (mFirstPendingChange == 0) {
+            mFirstPendingChange = now;
+        }
+
+        long deadline = mFirstPendingChange + mWriteBackMaxDelay;
+        mHandler.removeCallbacks(mWriteBack);
+        mHandler.postAtTime(mWriteBack, Math.min(now + mWriteBackDelay, deadline));
+    }
+
+    /**
+     * Changes the window in which local changes to dashboards are batched.
+     *
+     * @param delay    time in milliseconds after the last change.
+     * @param maxDelay time in milliseconds after the first change.
+     */
+    public void setWriteBackDelay(long delay, long maxDelay) {
+        if (delay < 0 || maxDelay < delay) {
+            throw new IllegalArgumentException("Wrong write back delay: delay="
+                    + delay + ", maxDelay=" + maxDelay);
+        }
+
+        mWriteBackDelay = delay;
+        mWriteBackMaxDelay = maxDelay;
+    }
+
+    private void flushDashboardChanges() {
+        syncDashboards();
+        EventBusProvider.post(new UiEvent(UiEvent.UiEventType.SYNC_DASHBOARDS));
+    }
+
+    private void cancelScheduledDashboardsSync() {
+        mHandler.removeCallbacks(mWriteBack);
+        mFirstPendingChange = 0;
+    }
 
+    public void syncInterpretations() {
+        Job<?> job = new NetworkJob<Object>(SYNC_INTERPRETATIONS,
+                ResourceType.INTERPRETATIONS) {
             @Override
             public Object execute() throws APIException {
-                Dhis2.dashboards().sync();
+                Dhis2.interpretations().sync();
+                return new Object();
+            }
+        };
+        job.setTimeout(SYNC_TIMEOUT);
+        JobExecutor.enqueueCoalescingJob(job);
+    }
+
+    /**
+     * Downloads content of dashboards which are kept offline. Only items which have
+     * changed since the last refresh are downloaded, all of them by one background job.
+     */
+    public void refreshOfflinePack() {
+        JobExecutor.enqueueCoalescingJob(new Job<Object>(REFRESH_OFFLINE_PACK, Job.Priority.LOW) {
+            @Override
+            public Object inBackground() {
+                OfflinePack.getInstance().refresh(this);
                 return new Object();
             }
         });
     }
 
-    public void syncDashboards() {
-        JobExecutor.enqueueJob(new NetworkJob<Object>(SYNC_DASHBOARDS,
-                ResourceType.DASHBOARDS) {
+    /**
+     * Brings search index in line with local dashboards and their contents.
+     */
+    public void indexDashboards() {
+        JobExecutor.enqueueCoalescingJob(new Job<Object>(INDEX_DASHBOARDS, Job.Priority.LOW) {
+            @Override
+            public Object inBackground() {
+                FullTextIndex.getInstance().updateDashboards();
+                return new Object();
+            }
+        });
+    }
 
+    /**
+     * Indexes interpretations which have changed since the last update.
+     */
+    public void indexInterpretations() {
+        JobExecutor.enqueueCoalescingJob(new Job<Object>(INDEX_INTERPRETATIONS, Job.Priority.LOW) {
             @Override
-            public Object execute() throws APIException {
-                Dhis2.dashboards().sync();
+            public Object inBackground() {
+                try {
+                    FullTextIndex.getInstance().updateInterpretations();
+                } catch (IOException e) {
+                    // index will catch up after the next sync
+                    e.printStackTrace();
+                }
                 return new Object();
             }
         });
     }
 
-    public void syncInterpretations() {
-        JobExecutor.enqueueJob(new NetworkJob<Object>(SYNC_INTERPRETATIONS,
-                ResourceType.INTERPRETATIONS) {
+    @Override
+    public void onSyncFinished(ResourceType resourceType) {
+        if (resourceType == ResourceType.DASHBOARDS) {
+            indexDashboards();
+
+            // keeping offline copies in line with the latest dashboards
+            if (!OfflinePack.getInstance().isEmpty()) {
+                refreshOfflinePack();
+            }
+        } else if (resourceType == ResourceType.INTERPRETATIONS) {
+            indexInterpretations();
+        }
+    }
+
+    private static Job<?> newSyncDashboardsJob(final boolean force) {
+        Job<?> job = new NetworkJob<Object>(SYNC_DASHBOARDS,
+                ResourceType.DASHBOARDS) {
+
             @Override
             public Object execute() throws APIException {
-                Dhis2.interpretations().sync();
+                DashboardDeltaSync.sync(force);
                 return new Object();
             }
-        });
+        };
+        job.setTimeout(SYNC_TIMEOUT);
+        return job;
     }
 
     public boolean isJobRunning(int jobId) {
         return JobExecutor.isJobRunning(jobId);
     }
+
+    public boolean cancelJob(int jobId) {
+        return JobExecutor.cancelJob(jobId);
+    }
 }
@@ -33,11 +33,37 @@ import android.os.AsyncTask;
 import static org.hisp.dhis.android.sdk.models.utils.Preconditions.isNull;
 
 public abstract class Job<T> extends AsyncTask<Void, Void, T> implements IJob<T> {
+
+    /**
+     * Jobs with higher priority are always started first by {@link JobExecutor}.
+     * Jobs with equal priority are started in order in which they were enqueued.
+     */
+    public enum Priority {
+        /* data which user is waiting for on screen (log in, report tables) */
+        HIGH,
+        /* synchronization of resources with server */
+        NORMAL,
+        /* everything which can wait (log out, cleanup) */
+        LOW
+    }
+
     private final int mJobId;
+    private final Priority mPriority;
     private JobExecutor mJobExecutor;
 
+    /* time in milliseconds after which running job is cancelled, 0 means no deadline */
+    private long mTimeout;
+
+    /* order in which job was enqueued, assigned by JobExecutor */
+    private long mSequence;
+
     public Job(int jobId) {
+        this(jobId, Priority.NORMAL);
+    }
+
+    public Job(int jobId, Priority priority) {
         mJobId = isNull(jobId, "Job ID must not be null");
+        mPriority = isNull(priority, "Job priority must not be null");
     }
 
     public final void onBind(JobExecutor executor) {
@@ -72,6 +98,19 @@ public abstract class Job<T> extends AsyncTask<Void, Void, T> implements IJob<T>
         // overriding method here just for convenience
     }
 
+    /* called instead of onPostExecute() if job was cancelled,
+    result of such job is never delivered to onFinish() */
+    @Override
+    public final void onCancelled(T result) {
+        onCancel();
+        mJobExecutor.onFinishJob(this);
+    }
+
+    @Override
+    public void onCancel() {
+        // overriding method here just for convenience
+    }
+
     public final void onUnbind() {
         mJobExecutor = null;
     }
@@ -79,4 +118,35 @@ public abstract class Job<T> extends AsyncTask<Void, Void, T> implements IJob<T>
     public final int getJobId() {
         return mJobId;
     }
+
+    public final Priority getPriority() {
+        return mPriority;
+    }
+
+    public final long getTimeout() {
+        return mTimeout;
+    }
+
+    /**
+     * Sets deadline for the job. If job is still running after given
+     * amount of time since its start, it will be cancelled by {@link JobExecutor}.
+     * Long running jobs should check {@link #isCancelled()} periodically.
+     *
+     * @param timeout time in milliseconds, 0 means no deadline.
+     */
+    public final void setTimeout(long timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Timeout must not be negative");
+        }
+
+        mTimeout = timeout;
+    }
+
+    final long getSequence() {
+        return mSequence;
+    }
+
+    final void setSequence(long sequence) {
+        mSequence = sequence;
+    }
 }
\ No newline at end of file
@@ -28,35 +28,84 @@
 
 package org.hisp.dhis.android.dashboard.job;
 
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.Queue;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hisp.dhis.android.sdk.models.utils.Preconditions.isNull;
 
+/**
+ * Runs jobs on dedicated thread pool. Pending jobs are started in order of their
+ * {@link Job.Priority}, and only one job with given ID can be enqueued at the time.
+ * Jobs can be enqueued and cancelled from any thread, while callbacks are always
+ * delivered on main thread.
+ */
 public final class JobExecutor {
     private static final String TAG = JobExecutor.class.getSimpleName();
-    private static final int MAX_RUNNING_JOBS = 64;
+
+    /* pool is sized in the same way as AsyncTask.THREAD_POOL_EXECUTOR */
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_CORE_POOL_SIZE = CPU_COUNT + 1;
+    private static final int DEFAULT_MAXIMUM_POOL_SIZE = CPU_COUNT * 2 + 1;
+    private static final int KEEP_ALIVE_SECONDS = 1;
+
+    private static int mCorePoolSize = DEFAULT_CORE_POOL_SIZE;
+    private static int mMaximumPoolSize = DEFAULT_MAXIMUM_POOL_SIZE;
 
     private static JobExecutor mJobExecutor;
 
-    private Queue<Job> mPendingJobs;
-    private Queue<Job> mRunningJobs;
-    private Map<Integer, Job> mPendingJobIds;
-    private Map<Integer, Job> mRunningJobIds;
+    private final ThreadPoolExecutor mThreadPool;
+    private final Handler mMainHandler;
+    private final Runnable mExecuteNextJobs;
+
+    /* at most mCorePoolSize jobs are running at the same time, the rest is waiting
+    here, which allows us to decide which job has to be started next */
+    private final NavigableSet<Job> mPendingJobs;
+    private final Map<Integer, Job> mPendingJobIds;
+    private final Map<Integer, Job> mRunningJobIds;
+
+    /* jobs which have to be started right after running job with the same ID finishes */
+    private final Map<Integer, Job> mFollowUpJobs;
+
+    /* running jobs which were cancelled, but are still occupying thread; their IDs stay reserved
+    until they really finish, since work inside (like synchronization) might not
+    stop on interrupt, and job with the same ID must never run next to it */
+    private final Set<Job> mCancelledJobs;
+    private long mSequence;
 
     private JobExecutor() {
-        mPendingJobs = new LinkedList<>();
-        mRunningJobs = new LinkedList<>();
+        mThreadPool = new ThreadPoolExecutor(mCorePoolSize, mMaximumPoolSize,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(mMaximumPoolSize), new JobThreadFactory());
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mExecuteNextJobs = new Runnable() {
+            @Override
+            public void run() {
+                executeNextJobs();
+            }
+        };
 
+        mPendingJobs = new TreeSet<>(new JobComparator());
         mPendingJobIds = new HashMap<>();
         mRunningJobIds = new HashMap<>();
+        mFollowUpJobs = new HashMap<>();
+        mCancelledJobs = new HashSet<>();
     }
 
-    private static JobExecutor getInstance() {
+    private static synchronized JobExecutor getInstance() {
         if (mJobExecutor == null) {
             mJobExecutor = new JobExecutor();
         }
@@ -64,42 +113,191 @@ public final class JobExecutor {
         return mJobExecutor;
     }
 
-    private static <T> void run(AsyncTask<Void, Void, T> task) {
-        task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    /**
+     * Overrides default size of thread pool. Has to be
+     * called before first job is enqueued (for example in Application.onCreate()).
+     *
+     * @param corePoolSize    number of jobs which can run at the same time.
+     * @param maximumPoolSize upper bound of threads in pool.
+     */
+    public static synchronized void setPoolSize(int corePoolSize, int maximumPoolSize) {
+        if (mJobExecutor != null) {
+            throw new IllegalStateException("JobExecutor is already in use");
+        }
+
+        if (corePoolSize < 1 || maximumPoolSize < corePoolSize) {
+            throw new IllegalArgumentException("Wrong pool size: core="
+                    + corePoolSize + ", maximum=" + maximumPoolSize);
+        }
+
+        mCorePoolSize = corePoolSize;
+        mMaximumPoolSize = maximumPoolSize;
     }
 
     public static <T> void enqueueJob(Job<T> job) {
         isNull(job, "Job object must not be null");
 
         JobExecutor executor = getInstance();
-        if (!executor.isJobEnqueued(job.getJobId())) {
+        synchronized (executor) {
+            int jobId = job.getJobId();
+            Job runningJob = executor.mRunningJobIds.get(jobId);
+            if (runningJob != null && executor.mCancelledJobs.contains(runningJob)) {
+                /* started once the cancelled job gives its thread back */
+                executor.mFollowUpJobs.put(jobId, job);
+                return;
+            }
+
+            if (executor.isJobEnqueued(jobId)) {
+                return;
+            }
+
+            executor.enqueuePendingJob(job);
+        }
+
+        executor.scheduleNextJobs();
+    }
+
+    /**
+     * Enqueues job in the way that no request is lost, while duplicate requests are collapsed.
+     * If job with the same ID is pending, it will see all changes made up to its start, so
+     * the given job is dropped. If job with the same ID is already running, the given job
+     * is started once after it finishes, replacing any follow-up job enqueued before.
+     *
+     * @param job job to enqueue.
+     */
+    public static <T> void enqueueCoalescingJob(Job<T> job) {
+        isNull(job, "Job object must not be null");
+
+        JobExecutor executor = getInstance();
+        synchronized (executor) {
+            int jobId = job.getJobId();
+            if (executor.mPendingJobIds.get(jobId) != null) {
+                return;
+            }
+
+            if (executor.mRunningJobIds.get(jobId) != null) {
+                executor.mFollowUpJobs.put(jobId, job);
+                return;
+            }
+
+            executor.mFollowUpJobs.remove(jobId);
             executor.enqueuePendingJob(job);
-            executor.executeNextJob();
         }
+
+        executor.scheduleNextJobs();
+    }
+
+    /**
+     * Cancels pending or running job with given ID. Pending job is removed from
+     * queue right away, running job is interrupted and its result is discarded.
+     * In both cases only {@link Job#onCancel()} is called. ID of running job stays
+     * reserved until the job actually returns, job with the same ID enqueued meanwhile
+     * is started right after that. Follow-up job enqueued before cancelling is discarded.
+     *
+     * @param jobId ID of job to cancel.
+     * @return true if there was a job to cancel.
+     */
+    public static boolean cancelJob(int jobId) {
+        JobExecutor executor = getInstance();
+
+        final Job pendingJob;
+        final Job runningJob;
+        synchronized (executor) {
+            pendingJob = executor.mPendingJobIds.get(jobId);
+            runningJob = executor.mRunningJobIds.get(jobId);
+            executor.mFollowUpJobs.remove(jobId);
+
+            if (pendingJob != null) {
+                executor.dequeuePendingJob(pendingJob);
+            }
+        }
+
+        if (pendingJob != null) {
+            executor.runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    pendingJob.onCancel();
+                }
+            });
+            return true;
+        }
+
+        return runningJob != null && executor.cancelRunningJob(runningJob);
     }
 
     public static boolean isJobRunning(int jobId) {
         JobExecutor executor = getInstance();
-        return executor.isJobEnqueued(jobId);
+        synchronized (executor) {
+            return executor.isJobEnqueued(jobId);
+        }
+    }
+
+    /* AsyncTask has to be started from main thread */
+    private void scheduleNextJobs() {
+        runOnMainThread(mExecuteNextJobs);
     }
 
-    private void executeNextJob() {
-        if (mRunningJobIds.size() < MAX_RUNNING_JOBS &&
-                mPendingJobs.size() > 0) {
-            Job job = mPendingJobs.peek();
-            dequeuePendingJob(job);
-            onStartJob(job);
+    private void runOnMainThread(Runnable runnable) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            runnable.run();
+        } else {
+            mMainHandler.post(runnable);
         }
     }
 
-    <T> void onStartJob(Job<T> job) {
-        bindJob(job);
-        run(job);
+    private void executeNextJobs() {
+        while (true) {
+            Job job;
+            synchronized (this) {
+                if (mRunningJobIds.size() >= mCorePoolSize ||
+                        mPendingJobs.isEmpty()) {
+                    return;
+                }
+
+                job = mPendingJobs.first();
+                dequeuePendingJob(job);
+                bindJob(job);
+            }
+            job.executeOnExecutor(mThreadPool);
+            scheduleDeadline(job);
+        }
     }
 
     void onFinishJob(Job job) {
-        unbindJob(job);
-        executeNextJob();
+        /* job is used as token for its deadline callback */
+        mMainHandler.removeCallbacksAndMessages(job);
+        synchronized (this) {
+            unbindJob(job);
+
+            int jobId = job.getJobId();
+            Job followUpJob = mFollowUpJobs.get(jobId);
+            if (followUpJob != null && !isJobEnqueued(jobId)) {
+                mFollowUpJobs.remove(jobId);
+                enqueuePendingJob(followUpJob);
+            }
+        }
+        executeNextJobs();
+    }
+
+    private boolean cancelRunningJob(Job job) {
+        synchronized (this) {
+            if (mRunningJobIds.get(job.getJobId()) != job || !mCancelledJobs.add(job)) {
+                return false;
+            }
+        }
+
+        return job.cancel(true);
+    }
+
+    private void scheduleDeadline(final Job job) {
+        if (job.getTimeout() > 0) {
+            mMainHandler.postAtTime(new Runnable() {
+                @Override
+                public void run() {
+                    cancelRunningJob(job);
+                }
+            }, job, SystemClock.uptimeMillis() + job.getTimeout());
+        }
     }
 
     <T> void bindJob(Job<T> job) {
@@ -113,6 +311,7 @@ public final class JobExecutor {
     }
 
     private void enqueuePendingJob(Job job) {
+        job.setSequence(mSequence++);
         mPendingJobIds.put(job.getJobId(), job);
         mPendingJobs.add(job);
     }
@@ -124,16 +323,41 @@ public final class JobExecutor {
 
     private void enqueueRunningJob(Job job) {
         mRunningJobIds.put(job.getJobId(), job);
-        mRunningJobs.add(job);
     }
 
     private void dequeueRunningJob(Job job) {
-        mRunningJobIds.remove(job.getJobId());
-        mRunningJobs.remove(job);
+        if (mRunningJobIds.get(job.getJobId()) == job) {
+            mRunningJobIds.remove(job.getJobId());
+        }
+        mCancelledJobs.remove(job);
     }
 
     private boolean isJobEnqueued(int jobId) {
         return mPendingJobIds.get(jobId) != null ||
                 mRunningJobIds.get(jobId) != null;
     }
-}
\ No newline at end of file
+
+    /* higher priority first, then first in first out */
+    private static class JobComparator implements Comparator<Job> {
+
+        @Override
+        public int compare(Job lhs, Job rhs) {
+            int priority = lhs.getPriority().compareTo(rhs.getPriority());
+            if (priority != 0) {
+                return priority;
+            }
+
+            return lhs.getSequence() < rhs.getSequence() ? -1 :
+                    (lhs.getSequence() == rhs.getSequence() ? 0 : 1);
+        }
+    }
+
+    private static class JobThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, TAG + " #" + mCount.getAndIncrement());
+        }
+    }
+}
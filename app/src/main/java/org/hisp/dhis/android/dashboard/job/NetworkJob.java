@@ -28,6 +28,7 @@
 
 package org.hisp.dhis.android.dashboard.job;
 
+import org.hisp.dhis.android.dashboard.sync.SyncTransactions;
 import org.hisp.dhis.android.dashboard.utils.EventBusProvider;
 import org.hisp.dhis.android.sdk.core.network.APIException;
 import org.hisp.dhis.android.sdk.core.network.SessionManager;
@@ -36,13 +37,24 @@ import org.hisp.dhis.android.sdk.core.persistence.preferences.ResourceType;
 
 public abstract class NetworkJob<T> extends Job<ResponseHolder<T>> {
     private final ResourceType mResourceType;
+    private boolean mIsSyncInProgress;
 
     public NetworkJob(int jobId, ResourceType responseType) {
-        super(jobId);
+        this(jobId, responseType, Priority.NORMAL);
+    }
+
+    public NetworkJob(int jobId, ResourceType responseType, Priority priority) {
+        super(jobId, priority);
 
         mResourceType = responseType;
     }
 
+    @Override
+    public final void onStart() {
+        mIsSyncInProgress = true;
+        SyncTransactions.begin(mResourceType);
+    }
+
     @Override
     public final ResponseHolder<T> inBackground() {
         ResponseHolder<T> holder = new ResponseHolder<>();
@@ -59,10 +71,26 @@ public abstract class NetworkJob<T> extends Job<ResponseHolder<T>> {
     public final void onFinish(ResponseHolder<T> result) {
         SessionManager.getInstance()
                 .setResourceTypeSynced(mResourceType);
+        endSync();
         EventBusProvider.post(
                 new NetworkJobResult<>(mResourceType, result));
     }
 
+    @Override
+    public final void onCancel() {
+        endSync();
+        EventBusProvider.post(
+                new NetworkJobCancelled(mResourceType));
+    }
+
+    /* pending jobs can be cancelled before they were started */
+    private void endSync() {
+        if (mIsSyncInProgress) {
+            mIsSyncInProgress = false;
+            SyncTransactions.end(mResourceType);
+        }
+    }
+
     public static class NetworkJobResult<Type> {
         private final ResourceType mResourceType;
         private final ResponseHolder<Type> mResponseHolder;
@@ -82,5 +110,18 @@ public abstract class NetworkJob<T> extends Job<ResponseHolder<T>> {
         }
     }
 
+    /* posted instead of NetworkJobResult when job was cancelled or timed out */
+    public static class NetworkJobCancelled {
+        private final ResourceType mResourceType;
+
+        public NetworkJobCancelled(ResourceType resourceType) {
+            mResourceType = resourceType;
+        }
+
+        public ResourceType getResourceType() {
+            return mResourceType;
+        }
+    }
+
     public abstract T execute() throws APIException;
 }
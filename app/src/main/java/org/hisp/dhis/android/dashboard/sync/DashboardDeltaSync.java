@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.sync;
+
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+
+import org.hisp.dhis.android.sdk.core.api.Dhis2;
+import org.hisp.dhis.android.sdk.core.network.APIException;
+import org.hisp.dhis.android.sdk.core.network.RepositoryManager;
+import org.hisp.dhis.android.sdk.core.persistence.preferences.ResourceType;
+import org.hisp.dhis.android.sdk.models.dashboard.Dashboard;
+import org.hisp.dhis.android.sdk.models.dashboard.DashboardItemContent;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Avoids pulling all dashboards from server when nothing has changed since the last sync.
+ * Before each sync, only UIDs and lastUpdated values of dashboards are requested. Dashboards
+ * are synced only if some of them were updated after the stored watermark, some were
+ * created or deleted on server, or there are local changes to push.
+ */
+public final class DashboardDeltaSync {
+    private static final ResourceType RESOURCE_TYPE = ResourceType.DASHBOARDS;
+
+    /* changes to content of dashboard items (for example, renamed chart) do not
+    update dashboards, so once in a while we are doing full sync anyway */
+    private static final long FULL_SYNC_INTERVAL = TimeUnit.HOURS.toMillis(24);
+
+    private static final String DASHBOARDS = "dashboards";
+    private static final String ID = "id";
+    private static final String LAST_UPDATED = "lastUpdated";
+    private static final String SEPARATOR = "/";
+
+    private DashboardDeltaSync() {
+        // no instances
+    }
+
+    /**
+     * Has to be called after each local change to dashboards, in order
+     * to prevent sync from being skipped before the change is pushed.
+     */
+    public static void onLocalChange() {
+        SyncWatermarks.getInstance().setHasLocalChanges(RESOURCE_TYPE, true);
+    }
+
+    /**
+     * Queues content which exists only on server (it was found by remote search) to be
+     * added to dashboard by server itself during the next sync. Sync has to be scheduled
+     * afterwards, in the same way as after any other local change.
+     *
+     * @param dashboard  dashboard to add content to.
+     * @param type       type of content, as in {@link DashboardItemContent}.
+     * @param contentUId uid of content on server.
+     */
+    public static void addRemoteContent(Dashboard dashboard, String type, String contentUId) {
+        SyncWatermarks.getInstance().addPendingContent(
+                dashboard.getUId() + SEPARATOR + type + SEPARATOR + contentUId);
+        onLocalChange();
+    }
+
+    /**
+     * Syncs dashboards, unless server reports no changes since the last sync.
+     *
+     * @param force if true, dashboards are synced regardless of changes on server.
+     * @return true if dashboards were synced, false if sync was skipped.
+     * @throws APIException if sync has failed.
+     */
+    public static boolean sync(boolean force) throws APIException {
+        SyncWatermarks watermarks = SyncWatermarks.getInstance();
+        RemoteState remoteState = getRemoteState();
+        Set<String> pendingContents = watermarks.getPendingContent();
+
+        boolean isSyncRequired = force || remoteState == null || !pendingContents.isEmpty() ||
+                watermarks.hasLocalChanges(RESOURCE_TYPE) ||
+                isFullSyncDue(watermarks) ||
+                remoteState.hasChangesSince(watermarks.getLastUpdated(RESOURCE_TYPE));
+        if (!isSyncRequired) {
+            return false;
+        }
+
+        // changes made during sync will set the flag again
+        watermarks.setHasLocalChanges(RESOURCE_TYPE, false);
+        try {
+            Dhis2.dashboards().sync();
+
+            /* dashboards created locally exist on server only after the first sync,
+            items which server has created for pending content are pulled by the second */
+            if (addPendingContents(pendingContents)) {
+                Dhis2.dashboards().sync();
+            }
+        } catch (APIException exception) {
+            watermarks.setHasLocalChanges(RESOURCE_TYPE, true);
+            throw exception;
+        }
+
+        /* remote state was captured before sync, so everything
+        what has changed after it will be picked up next time */
+        if (remoteState != null) {
+            watermarks.setLastUpdated(RESOURCE_TYPE, remoteState.mLastUpdated);
+        }
+        watermarks.setLastFullSync(RESOURCE_TYPE, System.currentTimeMillis());
+        return true;
+    }
+
+    /* returns true if any content was added; content which server refuses (for example,
+    it was deleted meanwhile) is dropped, the rest is tried again during the next sync */
+    private static boolean addPendingContents(Set<String> pendingContents) {
+        boolean isAdded = false;
+        for (String pendingContent : pendingContents) {
+            String[] parts = pendingContent.split(SEPARATOR);
+            if (parts.length != 3) {
+                SyncWatermarks.getInstance().removePendingContent(pendingContent);
+                continue;
+            }
+
+            HttpUrl url = Dhis2.getServerUrl().newBuilder()
+                    .addPathSegment("api").addPathSegment(DASHBOARDS)
+                    .addPathSegment(parts[0]).addPathSegment("items")
+                    .addPathSegment("content")
+                    .addQueryParameter("type", parts[1])
+                    .addQueryParameter("id", parts[2])
+                    .build();
+            Request request = new Request.Builder()
+                    .url(url)
+                    .post(RequestBody.create(null, new byte[0]))
+                    .build();
+
+            try {
+                Response response = RepositoryManager.provideOkHttpClient()
+                        .newCall(request).execute();
+                response.body().close();
+                if (response.isSuccessful()) {
+                    isAdded = true;
+                }
+                if (response.code() < HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                    SyncWatermarks.getInstance().removePendingContent(pendingContent);
+                }
+            } catch (IOException exception) {
+                exception.printStackTrace();
+            }
+        }
+        return isAdded;
+    }
+
+    private static boolean isFullSyncDue(SyncWatermarks watermarks) {
+        long lastFullSync = watermarks.getLastFullSync(RESOURCE_TYPE);
+        return System.currentTimeMillis() - lastFullSync > FULL_SYNC_INTERVAL;
+    }
+
+    /* returns null if state cannot be retrieved, in this case we have to do full sync */
+    private static RemoteState getRemoteState() {
+        HttpUrl url = Dhis2.getServerUrl().newBuilder()
+                .addPathSegment("api").addPathSegment(DASHBOARDS)
+                .addQueryParameter("fields", ID + "," + LAST_UPDATED)
+                .addQueryParameter("paging", "false")
+                .build();
+        Request request = new Request.Builder()
+                .url(url)
+                .get()
+                .build();
+
+        try {
+            Response response = RepositoryManager.provideOkHttpClient()
+                    .newCall(request).execute();
+            if (!response.isSuccessful()) {
+                response.body().close();
+                return null;
+            }
+
+            JSONArray dashboards = new JSONObject(response.body().string())
+                    .getJSONArray(DASHBOARDS);
+            RemoteState remoteState = new RemoteState();
+            for (int i = 0; i < dashboards.length(); i++) {
+                JSONObject dashboard = dashboards.getJSONObject(i);
+                remoteState.add(dashboard.getString(ID),
+                        dashboard.optString(LAST_UPDATED, null));
+            }
+            return remoteState;
+        } catch (IOException | JSONException exception) {
+            exception.printStackTrace();
+            return null;
+        }
+    }
+
+    private static class RemoteState {
+        final Set<String> mUIds = new HashSet<>();
+
+        /* ISO 8601 timestamps in the same format and time zone
+        can be compared as strings */
+        String mLastUpdated;
+
+        void add(String uId, String lastUpdated) {
+            mUIds.add(uId);
+
+            if (lastUpdated != null && (mLastUpdated == null ||
+                    lastUpdated.compareTo(mLastUpdated) > 0)) {
+                mLastUpdated = lastUpdated;
+            }
+        }
+
+        /* dashboards created or deleted on server are detected
+        by comparing remote UIDs with local ones */
+        boolean hasChangesSince(String watermark) {
+            if (watermark == null) {
+                return true;
+            }
+
+            if (mLastUpdated != null && mLastUpdated.compareTo(watermark) > 0) {
+                return true;
+            }
+
+            List<Dashboard> dashboards = Dhis2.dashboards().list();
+            Set<String> localUIds = new HashSet<>();
+            if (dashboards != null) {
+                for (Dashboard dashboard : dashboards) {
+                    localUIds.add(dashboard.getUId());
+                }
+            }
+
+            return !localUIds.equals(mUIds);
+        }
+    }
+}
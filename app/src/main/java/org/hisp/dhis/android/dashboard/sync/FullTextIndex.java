@@ -0,0 +1,765 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import org.hisp.dhis.android.sdk.core.api.Dhis2;
+import org.hisp.dhis.android.sdk.core.network.RepositoryManager;
+import org.hisp.dhis.android.sdk.models.dashboard.Dashboard;
+import org.hisp.dhis.android.sdk.models.dashboard.DashboardItemContent;
+import org.joda.time.DateTime;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.hisp.dhis.android.sdk.models.utils.Preconditions.isNull;
+
+/**
+ * Full-text index over names of dashboards and dashboard item contents, and over
+ * text and comments of interpretations, stored in separate SQLite database (FTS4).
+ * Index is updated incrementally after each sync: only entries whose lastUpdated
+ * has changed are rewritten. Search touches only matching entries. Listeners are
+ * notified on main thread each time changes to index are committed.
+ */
+public final class FullTextIndex {
+    public static final String KIND_DASHBOARD = "dashboard";
+    public static final String KIND_CONTENT = "content";
+    public static final String KIND_INTERPRETATION = "interpretation";
+
+    private static final String DATABASE_NAME = "fullTextIndex.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String ENTRIES = "entries";
+    private static final String ENTRIES_FTS = "entries_fts";
+    private static final String META = "meta";
+
+    private static final String COLUMN_ID = "_id";
+    private static final String COLUMN_KIND = "kind";
+    private static final String COLUMN_TYPE = "type";
+    private static final String COLUMN_UID = "uid";
+    private static final String COLUMN_LAST_UPDATED = "lastUpdated";
+    private static final String COLUMN_TITLE = "title";
+    private static final String COLUMN_BODY = "body";
+    private static final String COLUMN_KEY = "key";
+    private static final String COLUMN_VALUE = "value";
+
+    /* interpretations are not kept in local database, so their changes are pulled from
+    server page by page; deletions can be noticed only by full refresh, which is done
+    once in a while */
+    private static final String INTERPRETATIONS_WATERMARK = "interpretations:lastUpdated";
+    private static final String INTERPRETATIONS_FULL_REFRESH = "interpretations:lastFullRefresh";
+    private static final long FULL_REFRESH_INTERVAL = TimeUnit.HOURS.toMillis(24);
+    private static final int INTERPRETATIONS_PAGE_SIZE = 50;
+
+    /* hits in names count more than hits in interpretation text */
+    private static final int TITLE_WEIGHT = 4;
+    private static final int BODY_WEIGHT = 1;
+
+    private static FullTextIndex mFullTextIndex;
+
+    private final DatabaseHelper mDatabaseHelper;
+
+    /* searches can run in parallel, but not while database is being deleted */
+    private final ReadWriteLock mDatabaseLock;
+
+    private final Handler mMainHandler;
+    private final List<Listener> mListeners;
+
+    /* incremented by clear(); updates which have started before are not allowed
+    to write anything afterwards, since they carry data of the previous user */
+    private int mGeneration;
+
+    private FullTextIndex(Context context) {
+        mDatabaseHelper = new DatabaseHelper(context);
+        mDatabaseLock = new ReentrantReadWriteLock();
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mListeners = new ArrayList<>();
+    }
+
+    public static void init(Context context) {
+        isNull(context, "Context must not be null");
+
+        if (mFullTextIndex == null) {
+            mFullTextIndex = new FullTextIndex(context.getApplicationContext());
+        }
+    }
+
+    public static FullTextIndex getInstance() {
+        if (mFullTextIndex == null) {
+            throw new IllegalStateException("FullTextIndex must be initialized first");
+        }
+
+        return mFullTextIndex;
+    }
+
+    /**
+     * Has to be called from main thread.
+     */
+    public void register(Listener listener) {
+        isNull(listener, "Listener must not be null");
+
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    /**
+     * Has to be called from main thread.
+     */
+    public void unregister(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Brings entries of dashboards and dashboard item contents in line with local
+     * database. All local dashboards and contents are read and compared with index,
+     * but only changed entries are written. Has to be called on background thread,
+     * after dashboards are synced.
+     */
+    public void updateDashboards() {
+        int generation = getGeneration();
+        Map<String, Entry> entries = new HashMap<>();
+        List<Dashboard> dashboards = Dhis2.dashboards().list();
+        if (dashboards != null) {
+            for (Dashboard dashboard : dashboards) {
+                Entry entry = new Entry(KIND_DASHBOARD, null, dashboard.getUId(),
+                        getMillis(dashboard.getLastUpdated()), dashboard.getDisplayName(), null);
+                entries.put(entry.getKey(), entry);
+            }
+        }
+
+        List<String> types = Arrays.asList(DashboardItemContent.TYPE_CHART,
+                DashboardItemContent.TYPE_EVENT_CHART, DashboardItemContent.TYPE_MAP,
+                DashboardItemContent.TYPE_REPORT_TABLE, DashboardItemContent.TYPE_EVENT_REPORT,
+                DashboardItemContent.TYPE_USERS, DashboardItemContent.TYPE_REPORTS,
+                DashboardItemContent.TYPE_RESOURCES);
+        List<DashboardItemContent> contents = Dhis2.dashboardItemContents().list(types);
+        if (contents != null) {
+            for (DashboardItemContent content : contents) {
+                Entry entry = new Entry(KIND_CONTENT, content.getType(), content.getUId(),
+                        getMillis(content.getLastUpdated()), content.getDisplayName(), null);
+                entries.put(entry.getKey(), entry);
+            }
+        }
+
+        if (synchronize(Arrays.asList(KIND_DASHBOARD, KIND_CONTENT), entries, true, generation)) {
+            notifyListeners();
+        }
+    }
+
+    /**
+     * Pulls interpretations which have changed since the last update page by page,
+     * oldest changes first, and indexes their text and comments. Each page is committed
+     * separately, so interrupted update continues where it has stopped. Has to be called
+     * on background thread, after interpretations are synced.
+     *
+     * @throws IOException if interpretations can't be retrieved from server.
+     */
+    public void updateInterpretations() throws IOException {
+        int generation = getGeneration();
+        String watermark = getMeta(INTERPRETATIONS_WATERMARK);
+        String lastFullRefresh = getMeta(INTERPRETATIONS_FULL_REFRESH);
+        boolean isFullRefresh = watermark == null || lastFullRefresh == null ||
+                System.currentTimeMillis() - Long.parseLong(lastFullRefresh) > FULL_REFRESH_INTERVAL;
+
+        // filter stays the same for all pages, otherwise pages would shift
+        String changedSince = isFullRefresh ? null : watermark;
+        Set<String> uids = new HashSet<>();
+        boolean hasChanges = false;
+        int pageCount = 1;
+        for (int page = 1; page <= pageCount; page++) {
+            InterpretationsPage interpretationsPage = getInterpretations(changedSince, page);
+            pageCount = interpretationsPage.pageCount;
+
+            Map<String, Entry> entries = new HashMap<>();
+            for (Entry entry : interpretationsPage.entries) {
+                entries.put(entry.getKey(), entry);
+                uids.add(entry.uid);
+            }
+            hasChanges |= synchronize(Collections.singletonList(KIND_INTERPRETATION),
+                    entries, false, generation);
+
+            // pages are ordered by lastUpdated, so watermark only moves forward
+            String pageWatermark = interpretationsPage.watermark;
+            if (pageWatermark != null &&
+                    !setMeta(INTERPRETATIONS_WATERMARK, pageWatermark, generation)) {
+                // index was cleared meanwhile
+                return;
+            }
+        }
+
+        if (isFullRefresh) {
+            hasChanges |= deleteMissing(KIND_INTERPRETATION, uids, generation);
+            setMeta(INTERPRETATIONS_FULL_REFRESH,
+                    Long.toString(System.currentTimeMillis()), generation);
+        }
+
+        if (hasChanges) {
+            notifyListeners();
+        }
+    }
+
+    /**
+     * Searches for entries which contain words starting with each word of query. Only
+     * the best results are kept in memory, no matter how many entries match the query.
+     *
+     * @param query text typed by user.
+     * @param limit maximal number of results.
+     * @return results ordered by relevance.
+     */
+    public List<Result> search(String query, int limit) {
+        String match = buildMatchExpression(query);
+        if (match == null || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        /* the worst of the best results is on top of the heap */
+        PriorityQueue<Result> results = new PriorityQueue<>(limit,
+                Collections.reverseOrder(Result.SCORE_COMPARATOR));
+
+        mDatabaseLock.readLock().lock();
+        try {
+            Cursor cursor = mDatabaseHelper.getReadableDatabase().rawQuery(
+                    "SELECT matchinfo(" + ENTRIES_FTS + ", 'pcx'), e." + COLUMN_KIND +
+                            ", e." + COLUMN_TYPE + ", e." + COLUMN_UID + ", e." + COLUMN_TITLE +
+                            " FROM " + ENTRIES_FTS + " JOIN " + ENTRIES + " e ON e." + COLUMN_ID +
+                            " = " + ENTRIES_FTS + ".docid WHERE " + ENTRIES_FTS + " MATCH ?",
+                    new String[]{match});
+            try {
+                while (cursor.moveToNext()) {
+                    double score = rank(cursor.getBlob(0));
+                    if (results.size() == limit) {
+                        if (score <= results.peek().score) {
+                            continue;
+                        }
+                        results.poll();
+                    }
+                    results.add(new Result(cursor.getString(1), cursor.getString(2),
+                            cursor.getString(3), cursor.getString(4), score));
+                }
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            mDatabaseLock.readLock().unlock();
+        }
+
+        List<Result> sortedResults = new ArrayList<>(results);
+        Collections.sort(sortedResults, Result.SCORE_COMPARATOR);
+        return sortedResults;
+    }
+
+    public synchronized void clear() {
+        mGeneration++;
+        mDatabaseLock.writeLock().lock();
+        try {
+            mDatabaseHelper.close();
+            mDatabaseHelper.getContext().deleteDatabase(DATABASE_NAME);
+        } finally {
+            mDatabaseLock.writeLock().unlock();
+        }
+        notifyListeners();
+    }
+
+    private synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    private void notifyListeners() {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // listener can unregister itself from callback
+                for (Listener listener : new ArrayList<>(mListeners)) {
+                    listener.onIndexUpdated();
+                }
+            }
+        });
+    }
+
+    private static long getMillis(DateTime dateTime) {
+        return dateTime == null ? 0 : dateTime.getMillis();
+    }
+
+    /* each word of query becomes prefix query, words are combined with implicit AND */
+    private static String buildMatchExpression(String query) {
+        if (query == null) {
+            return null;
+        }
+
+        StringBuilder match = new StringBuilder();
+        int start = -1;
+        for (int index = 0; index <= query.length(); index++) {
+            boolean isWordChar = index < query.length() &&
+                    Character.isLetterOrDigit(query.charAt(index));
+            if (isWordChar && start < 0) {
+                start = index;
+            } else if (!isWordChar && start >= 0) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                match.append(query.substring(start, index).toLowerCase()).append('*');
+                start = -1;
+            }
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+
+    /**
+     * matchinfo 'pcx' is array of 32-bit integers: number of phrases, number of columns,
+     * then for each phrase and column: hits in this row, hits in all rows and number of
+     * rows with hits. Hits of rare words weigh more than hits of common ones.
+     */
+    private static double rank(byte[] matchInfo) {
+        ByteBuffer buffer = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder());
+        int phraseCount = buffer.getInt(0);
+        int columnCount = buffer.getInt(4);
+
+        double score = 0;
+        for (int phrase = 0; phrase < phraseCount; phrase++) {
+            for (int column = 0; column < columnCount; column++) {
+                int offset = 4 * (2 + 3 * (phrase * columnCount + column));
+                int rowHits = buffer.getInt(offset);
+                int rowsWithHits = buffer.getInt(offset + 8);
+                if (rowHits > 0) {
+                    int weight = column == 0 ? TITLE_WEIGHT : BODY_WEIGHT;
+                    score += weight * (double) rowHits / rowsWithHits;
+                }
+            }
+        }
+        return score;
+    }
+
+    /* requests one page of interpretations, changed after watermark if it is given */
+    private static InterpretationsPage getInterpretations(String watermark, int page)
+            throws IOException {
+        HttpUrl.Builder url = Dhis2.getServerUrl().newBuilder()
+                .addPathSegment("api").addPathSegment("interpretations")
+                .addQueryParameter("fields", "id,text,lastUpdated,comments[text]")
+                .addQueryParameter("order", "lastUpdated:asc")
+                .addQueryParameter("page", Integer.toString(page))
+                .addQueryParameter("pageSize", Integer.toString(INTERPRETATIONS_PAGE_SIZE));
+        if (watermark != null) {
+            url.addQueryParameter("filter", "lastUpdated:gt:" + watermark);
+        }
+
+        Response response = RepositoryManager.provideOkHttpClient()
+                .newCall(new Request.Builder().url(url.build()).get().build()).execute();
+        if (!response.isSuccessful()) {
+            response.body().close();
+            throw new IOException("Unexpected response code: " + response.code());
+        }
+
+        JsonReader reader = new JsonReader(response.body().charStream());
+        try {
+            return readInterpretationsPage(reader);
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new IOException(e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /* interpretations are parsed while they are read, so that page is never kept as text */
+    private static InterpretationsPage readInterpretationsPage(JsonReader reader)
+            throws IOException {
+        InterpretationsPage page = new InterpretationsPage();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("pager".equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("pageCount".equals(reader.nextName())) {
+                        page.pageCount = reader.nextInt();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if ("interpretations".equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readInterpretation(reader, page);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return page;
+    }
+
+    /* adds interpretation to page and moves watermark of page forward */
+    private static void readInterpretation(JsonReader reader, InterpretationsPage page)
+            throws IOException {
+        String uid = null;
+        String lastUpdated = null;
+        StringBuilder body = new StringBuilder();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("id".equals(name)) {
+                uid = nextString(reader);
+            } else if ("lastUpdated".equals(name)) {
+                lastUpdated = nextString(reader);
+            } else if ("text".equals(name)) {
+                appendLine(body, nextString(reader));
+            } else if ("comments".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if ("text".equals(reader.nextName())) {
+                            appendLine(body, nextString(reader));
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (uid == null) {
+            return;
+        }
+
+        long millis = lastUpdated == null ? 0 : DateTime.parse(lastUpdated).getMillis();
+        page.entries.add(new Entry(KIND_INTERPRETATION, null, uid, millis, null, body.toString()));
+        if (lastUpdated != null && millis > page.watermarkMillis) {
+            page.watermarkMillis = millis;
+            page.watermark = lastUpdated;
+        }
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static void appendLine(StringBuilder builder, String line) {
+        if (line == null) {
+            return;
+        }
+        if (builder.length() > 0) {
+            builder.append('\n');
+        }
+        builder.append(line);
+    }
+
+    /**
+     * Writes changed entries of given kinds in one transaction.
+     *
+     * @param isComplete if true, entries of given kinds which are missing in new state
+     *                   are removed. Otherwise only entries with the same uids are compared.
+     * @param generation generation in which entries were collected, nothing is written
+     *                   if index was cleared since then.
+     * @return true if anything has been written.
+     */
+    private synchronized boolean synchronize(List<String> kinds, Map<String, Entry> entries,
+                                             boolean isComplete, int generation) {
+        if (generation != mGeneration || (!isComplete && entries.isEmpty())) {
+            return false;
+        }
+
+        boolean hasChanges = false;
+        SQLiteDatabase database = mDatabaseHelper.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            for (String kind : kinds) {
+                Cursor cursor = queryEntries(database, kind, isComplete ? null : entries);
+                try {
+                    while (cursor.moveToNext()) {
+                        long id = cursor.getLong(0);
+                        String key = cursor.getString(1) + ":" + cursor.getString(2);
+                        Entry entry = entries.get(key);
+
+                        if (entry == null) {
+                            if (isComplete) {
+                                delete(database, id);
+                                hasChanges = true;
+                            }
+                        } else if (entry.lastUpdated == cursor.getLong(3)) {
+                            // nothing has changed since the last update
+                            entries.remove(key);
+                        } else {
+                            delete(database, id);
+                        }
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+
+            for (Entry entry : entries.values()) {
+                insert(database, entry);
+                hasChanges = true;
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        return hasChanges;
+    }
+
+    /* entries of given kind, optionally only the ones with uids of given entries */
+    private static Cursor queryEntries(SQLiteDatabase database, String kind,
+                                      Map<String, Entry> entries) {
+        String[] columns = new String[]{COLUMN_ID, COLUMN_KIND, COLUMN_UID, COLUMN_LAST_UPDATED};
+        if (entries == null) {
+            return database.query(ENTRIES, columns, COLUMN_KIND + " = ?",
+                    new String[]{kind}, null, null, null);
+        }
+
+        List<String> args = new ArrayList<>(entries.size() + 1);
+        args.add(kind);
+        StringBuilder selection = new StringBuilder(COLUMN_KIND + " = ? AND " + COLUMN_UID + " IN (");
+        for (Entry entry : entries.values()) {
+            selection.append(args.size() > 1 ? ", ?" : "?");
+            args.add(entry.uid);
+        }
+        selection.append(')');
+        return database.query(ENTRIES, columns, selection.toString(),
+                args.toArray(new String[args.size()]), null, null, null);
+    }
+
+    /* removes entries of given kind which are not among given uids */
+    private synchronized boolean deleteMissing(String kind, Set<String> uids, int generation) {
+        if (generation != mGeneration) {
+            return false;
+        }
+
+        boolean hasChanges = false;
+        SQLiteDatabase database = mDatabaseHelper.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            Cursor cursor = queryEntries(database, kind, null);
+            try {
+                while (cursor.moveToNext()) {
+                    if (!uids.contains(cursor.getString(2))) {
+                        delete(database, cursor.getLong(0));
+                        hasChanges = true;
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        return hasChanges;
+    }
+
+    private static void delete(SQLiteDatabase database, long id) {
+        String[] args = new String[]{Long.toString(id)};
+        database.delete(ENTRIES_FTS, "docid = ?", args);
+        database.delete(ENTRIES, COLUMN_ID + " = ?", args);
+    }
+
+    private static void insert(SQLiteDatabase database, Entry entry) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_KIND, entry.kind);
+        values.put(COLUMN_TYPE, entry.type);
+        values.put(COLUMN_UID, entry.uid);
+        values.put(COLUMN_LAST_UPDATED, entry.lastUpdated);
+        values.put(COLUMN_TITLE, entry.title);
+        long id = database.insert(ENTRIES, null, values);
+
+        ContentValues ftsValues = new ContentValues();
+        ftsValues.put("docid", id);
+        ftsValues.put(COLUMN_TITLE, entry.title);
+        ftsValues.put(COLUMN_BODY, entry.body);
+        database.insert(ENTRIES_FTS, null, ftsValues);
+    }
+
+    private synchronized String getMeta(String key) {
+        Cursor cursor = mDatabaseHelper.getReadableDatabase().query(META,
+                new String[]{COLUMN_VALUE}, COLUMN_KEY + " = ?", new String[]{key},
+                null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /* returns false if index was cleared since given generation, value is not stored then */
+    private synchronized boolean setMeta(String key, String value, int generation) {
+        if (generation != mGeneration) {
+            return false;
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_KEY, key);
+        values.put(COLUMN_VALUE, value);
+        mDatabaseHelper.getWritableDatabase().insertWithOnConflict(META, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+        return true;
+    }
+
+    /**
+     * Callback which is invoked on main thread after changes to index are committed.
+     */
+    public interface Listener {
+        void onIndexUpdated();
+    }
+
+    public static final class Result {
+        public static final Comparator<Result> SCORE_COMPARATOR = new Comparator<Result>() {
+            @Override
+            public int compare(Result first, Result second) {
+                return Double.compare(second.score, first.score);
+            }
+        };
+
+        public final String kind;
+        public final String type;
+        public final String uid;
+        public final String title;
+        public final double score;
+
+        Result(String kind, String type, String uid, String title, double score) {
+            this.kind = kind;
+            this.type = type;
+            this.uid = uid;
+            this.title = title;
+            this.score = score;
+        }
+    }
+
+    private static final class Entry {
+        final String kind;
+        final String type;
+        final String uid;
+        final long lastUpdated;
+        final String title;
+        final String body;
+
+        Entry(String kind, String type, String uid, long lastUpdated,
+              String title, String body) {
+            this.kind = kind;
+            this.type = type;
+            this.uid = uid;
+            this.lastUpdated = lastUpdated;
+            this.title = title;
+            this.body = body;
+        }
+
+        String getKey() {
+            return kind + ":" + uid;
+        }
+    }
+
+    private static final class InterpretationsPage {
+        final List<Entry> entries = new ArrayList<>();
+        int pageCount;
+
+        /* the latest lastUpdated on page, in format used by server */
+        String watermark;
+        long watermarkMillis = Long.MIN_VALUE;
+    }
+
+    private static final class DatabaseHelper extends SQLiteOpenHelper {
+        private final Context mContext;
+
+        DatabaseHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+            mContext = context;
+        }
+
+        Context getContext() {
+            return mContext;
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase database) {
+            database.execSQL("CREATE TABLE " + ENTRIES + " (" +
+                    COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    COLUMN_KIND + " TEXT NOT NULL, " +
+                    COLUMN_TYPE + " TEXT, " +
+                    COLUMN_UID + " TEXT NOT NULL, " +
+                    COLUMN_LAST_UPDATED + " INTEGER NOT NULL, " +
+                    COLUMN_TITLE + " TEXT, " +
+                    "UNIQUE (" + COLUMN_KIND + ", " + COLUMN_UID + "))");
+            database.execSQL("CREATE VIRTUAL TABLE " + ENTRIES_FTS +
+                    " USING fts4(" + COLUMN_TITLE + ", " + COLUMN_BODY + ")");
+            database.execSQL("CREATE TABLE " + META + " (" +
+                    COLUMN_KEY + " TEXT PRIMARY KEY, " +
+                    COLUMN_VALUE + " TEXT)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+            // index can always be rebuilt from scratch
+            database.execSQL("DROP TABLE IF EXISTS " + ENTRIES);
+            database.execSQL("DROP TABLE IF EXISTS " + ENTRIES_FTS);
+            database.execSQL("DROP TABLE IF EXISTS " + META);
+            onCreate(database);
+        }
+    }
+}
@@ -0,0 +1,522 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.sync;
+
+import android.content.Context;
+import android.os.AsyncTask;
+
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import org.hisp.dhis.android.dashboard.utils.ImageRequestPlanner;
+import org.hisp.dhis.android.dashboard.utils.PicassoProvider;
+import org.hisp.dhis.android.sdk.core.api.Dhis2;
+import org.hisp.dhis.android.sdk.core.network.APIException;
+import org.hisp.dhis.android.sdk.models.dashboard.Dashboard;
+import org.hisp.dhis.android.sdk.models.dashboard.DashboardElement;
+import org.hisp.dhis.android.sdk.models.dashboard.DashboardItem;
+import org.hisp.dhis.android.sdk.models.dashboard.DashboardItemContent;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hisp.dhis.android.sdk.models.utils.Preconditions.isNull;
+
+/**
+ * Keeps copies of chart and map images and report tables of dashboards chosen by user,
+ * so they can be shown without network connection. Files are stored together with
+ * manifest, which describes the content of each file and the version of dashboard
+ * item it was downloaded for. The total size of pack is limited by size budget.
+ */
+public final class OfflinePack {
+    private static final String PACK_DIR = "offline-pack";
+    private static final String MANIFEST = "manifest.json";
+    private static final String DASHBOARDS = "dashboards";
+    private static final String ENTRIES = "entries";
+    private static final String SKIPPED = "skipped";
+    private static final String KEY = "key";
+    private static final String FILE = "file";
+    private static final String SIZE = "size";
+    private static final String VERSION = "version";
+
+    public static final String REPORT_TABLES = "reportTables";
+    public static final long DEFAULT_SIZE_BUDGET = 50 * 1024 * 1024;
+
+    /* images in pack are large enough to be viewed on full screen */
+    private static final int IMAGE_WIDTH = 960;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static OfflinePack mOfflinePack;
+
+    private final Context mContext;
+    private final File mDirectory;
+
+    /* uids of dashboards which are kept offline */
+    private final Set<String> mDashboards;
+
+    /* entries are keyed by resource and uid, for example "charts/<uid>" */
+    private Map<String, Entry> mEntries;
+
+    /* content which did not fit into budget; its size is remembered, so
+    that it is not downloaded again until its version or budget changes */
+    private Map<String, Entry> mSkipped;
+    private long mSizeBudget;
+
+    /* incremented by clear(), so that refresh which was running meanwhile
+    does not bring back content of the previous user */
+    private int mGeneration;
+
+    private OfflinePack(Context context) {
+        mContext = context;
+        mDirectory = new File(context.getFilesDir(), PACK_DIR);
+        mDashboards = new HashSet<>();
+        mEntries = new HashMap<>();
+        mSkipped = new HashMap<>();
+        mSizeBudget = DEFAULT_SIZE_BUDGET;
+
+        readManifest();
+    }
+
+    public static void init(Context context) {
+        isNull(context, "Context must not be null");
+
+        if (mOfflinePack == null) {
+            mOfflinePack = new OfflinePack(context.getApplicationContext());
+        }
+    }
+
+    public static OfflinePack getInstance() {
+        if (mOfflinePack == null) {
+            throw new IllegalStateException("OfflinePack must be initialized first");
+        }
+
+        return mOfflinePack;
+    }
+
+    public synchronized boolean isEmpty() {
+        return mDashboards.isEmpty();
+    }
+
+    public synchronized boolean isPacked(Dashboard dashboard) {
+        return dashboard != null && mDashboards.contains(dashboard.getUId());
+    }
+
+    /**
+     * Adds dashboard to pack or removes it. Content is downloaded or removed
+     * only on the next {@link #refresh(AsyncTask)}.
+     */
+    public synchronized void setPacked(Dashboard dashboard, boolean isPacked) {
+        isNull(dashboard, "Dashboard must not be null");
+
+        if (isPacked) {
+            mDashboards.add(dashboard.getUId());
+        } else {
+            mDashboards.remove(dashboard.getUId());
+        }
+        writeManifest();
+    }
+
+    public synchronized void setSizeBudget(long sizeBudget) {
+        if (sizeBudget < 0) {
+            throw new IllegalArgumentException("Size budget must not be negative");
+        }
+        mSizeBudget = sizeBudget;
+    }
+
+    /**
+     * @param resource charts, eventCharts or maps.
+     * @return image file or null if image is not in pack.
+     */
+    public synchronized File getImage(String resource, String uid) {
+        return getFile(resource + "/" + uid);
+    }
+
+    /**
+     * @return html file of report table or null if it is not in pack.
+     */
+    public synchronized File getReportTable(String uid) {
+        return getFile(REPORT_TABLES + "/" + uid);
+    }
+
+    /**
+     * Brings pack in line with current state of packed dashboards. Only content of items
+     * which have changed since the last refresh is downloaded. Has to be called on
+     * background thread: the whole refresh is done in one batch by the calling task.
+     */
+    public void refresh(AsyncTask<?, ?, ?> task) {
+        Set<String> dashboardUids;
+        Map<String, Entry> oldEntries;
+        Map<String, Entry> oldSkipped;
+        long sizeBudget;
+        int generation;
+        synchronized (this) {
+            generation = mGeneration;
+            dashboardUids = new HashSet<>(mDashboards);
+            oldEntries = new HashMap<>(mEntries);
+            oldSkipped = new HashMap<>(mSkipped);
+            sizeBudget = mSizeBudget;
+        }
+
+        Map<String, Entry> entries = new HashMap<>();
+        Map<String, Entry> skipped = new HashMap<>();
+        long size = 0;
+
+        if (!mDirectory.exists()) {
+            mDirectory.mkdirs();
+        }
+
+        List<Dashboard> dashboards = Dhis2.dashboards().list();
+        if (dashboards == null) {
+            return;
+        }
+
+        for (Dashboard dashboard : dashboards) {
+            if (!dashboardUids.contains(dashboard.getUId())) {
+                continue;
+            }
+
+            List<DashboardItem> items = Dhis2.dashboardItems().list(dashboard);
+            if (items == null) {
+                continue;
+            }
+
+            for (DashboardItem item : items) {
+                if (task.isCancelled()) {
+                    discardIfCleared(generation);
+                    return;
+                }
+
+                // content of item is referenced by its elements
+                item.setDashboardElements(Dhis2.dashboardElements().list(item));
+
+                String key = getKey(item);
+                if (key == null || entries.containsKey(key) || skipped.containsKey(key)) {
+                    continue;
+                }
+
+                String version = item.getLastUpdated() == null ?
+                        "" : Long.toString(item.getLastUpdated().getMillis());
+                Entry entry = oldEntries.get(key);
+                if (entry == null || !entry.version.equals(version) ||
+                        !new File(mDirectory, entry.file).exists()) {
+                    /* size of content is known only after download, so content which
+                    did not fit before or which can't fit anymore is not requested */
+                    Entry skippedEntry = oldSkipped.get(key);
+                    if (skippedEntry != null && skippedEntry.version.equals(version) &&
+                            size + skippedEntry.size > sizeBudget) {
+                        skipped.put(key, skippedEntry);
+                        continue;
+                    }
+                    if (size >= sizeBudget) {
+                        continue;
+                    }
+
+                    entry = download(key, version, item);
+                }
+
+                // content which does not fit into budget is not kept
+                if (entry != null && size + entry.size <= sizeBudget) {
+                    entries.put(key, entry);
+                    size += entry.size;
+                } else if (entry != null) {
+                    skipped.put(key, new Entry(key, null, entry.size, version));
+                }
+            }
+        }
+
+        synchronized (this) {
+            if (generation != mGeneration) {
+                deleteUnusedFiles();
+                return;
+            }
+
+            mEntries = entries;
+            mSkipped = skipped;
+            writeManifest();
+            deleteUnusedFiles();
+        }
+    }
+
+    public synchronized void clear() {
+        mGeneration++;
+        mDashboards.clear();
+        mEntries = new HashMap<>();
+        mSkipped = new HashMap<>();
+        deleteUnusedFiles();
+        new File(mDirectory, MANIFEST).delete();
+    }
+
+    /* files downloaded after pack was cleared are not referenced by any entry */
+    private synchronized void discardIfCleared(int generation) {
+        if (generation != mGeneration) {
+            deleteUnusedFiles();
+        }
+    }
+
+    private File getFile(String key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        File file = new File(mDirectory, entry.file);
+        return file.exists() ? file : null;
+    }
+
+    private static String getKey(DashboardItem item) {
+        if (item.getType() == null) {
+            return null;
+        }
+
+        DashboardElement element = null;
+        String resource = null;
+        switch (item.getType()) {
+            case DashboardItemContent.TYPE_CHART:
+                element = item.getChart();
+                resource = "charts";
+                break;
+            case DashboardItemContent.TYPE_EVENT_CHART:
+                element = item.getEventChart();
+                resource = "eventCharts";
+                break;
+            case DashboardItemContent.TYPE_MAP:
+                element = item.getMap();
+                resource = "maps";
+                break;
+            case DashboardItemContent.TYPE_REPORT_TABLE:
+                element = item.getReportTable();
+                resource = REPORT_TABLES;
+                break;
+        }
+
+        return element == null ? null : resource + "/" + element.getUId();
+    }
+
+    /* new version is downloaded next to old one, so old one can be served meanwhile */
+    private Entry download(String key, String version, DashboardItem item) {
+        String resource = key.substring(0, key.indexOf('/'));
+        String uid = key.substring(key.indexOf('/') + 1);
+        String fileName = resource + "_" + uid + "_" + version;
+        File file = new File(mDirectory, fileName);
+        File tempFile = new File(mDirectory, fileName + ".tmp");
+
+        try {
+            if (REPORT_TABLES.equals(resource)) {
+                copy(Dhis2.getServiceApi().getReportTableData(uid).getBody().in(), tempFile);
+            } else {
+                int height = ImageRequestPlanner.getHeight(IMAGE_WIDTH);
+                String imageUrl = PicassoProvider.buildImageUrl(resource, uid,
+                        item.getLastUpdated(), IMAGE_WIDTH, height);
+
+                Response response = PicassoProvider.getOkHttpClient(mContext)
+                        .newCall(new Request.Builder().url(imageUrl).build()).execute();
+                // image served from pack itself comes neither from network nor cache
+                if (!response.isSuccessful() || (response.networkResponse() == null &&
+                        response.cacheResponse() == null)) {
+                    response.body().close();
+                    return null;
+                }
+                copy(response.body().byteStream(), tempFile);
+            }
+        } catch (IOException | APIException e) {
+            e.printStackTrace();
+            tempFile.delete();
+            return null;
+        }
+
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            return null;
+        }
+
+        return new Entry(key, fileName, file.length(), version);
+    }
+
+    private static void copy(InputStream in, File file) throws IOException {
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void deleteUnusedFiles() {
+        Set<String> usedFiles = new HashSet<>();
+        usedFiles.add(MANIFEST);
+        for (Entry entry : mEntries.values()) {
+            usedFiles.add(entry.file);
+        }
+
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!usedFiles.contains(file.getName())) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private void readManifest() {
+        File manifest = new File(mDirectory, MANIFEST);
+        if (!manifest.exists()) {
+            return;
+        }
+
+        try {
+            StringBuilder builder = new StringBuilder();
+            Reader reader = new InputStreamReader(new FileInputStream(manifest), "UTF-8");
+            try {
+                char[] buffer = new char[BUFFER_SIZE];
+                int count;
+                while ((count = reader.read(buffer)) != -1) {
+                    builder.append(buffer, 0, count);
+                }
+            } finally {
+                reader.close();
+            }
+
+            JSONObject json = new JSONObject(builder.toString());
+            JSONArray dashboards = json.getJSONArray(DASHBOARDS);
+            for (int index = 0; index < dashboards.length(); index++) {
+                mDashboards.add(dashboards.getString(index));
+            }
+
+            JSONArray entries = json.getJSONArray(ENTRIES);
+            for (int index = 0; index < entries.length(); index++) {
+                JSONObject entry = entries.getJSONObject(index);
+                mEntries.put(entry.getString(KEY), new Entry(entry.getString(KEY),
+                        entry.getString(FILE), entry.getLong(SIZE), entry.getString(VERSION)));
+            }
+
+            JSONArray skipped = json.optJSONArray(SKIPPED);
+            for (int index = 0; skipped != null && index < skipped.length(); index++) {
+                JSONObject entry = skipped.getJSONObject(index);
+                mSkipped.put(entry.getString(KEY), new Entry(entry.getString(KEY),
+                        null, entry.getLong(SIZE), entry.getString(VERSION)));
+            }
+        } catch (IOException | JSONException e) {
+            // pack will be downloaded again on the next refresh
+            e.printStackTrace();
+            mDashboards.clear();
+            mEntries.clear();
+            mSkipped.clear();
+        }
+    }
+
+    private void writeManifest() {
+        if (!mDirectory.exists()) {
+            mDirectory.mkdirs();
+        }
+
+        File manifest = new File(mDirectory, MANIFEST);
+        File tempManifest = new File(mDirectory, MANIFEST + ".tmp");
+        try {
+            JSONArray dashboards = new JSONArray();
+            for (String dashboard : mDashboards) {
+                dashboards.put(dashboard);
+            }
+
+            JSONArray entries = new JSONArray();
+            for (Entry entry : mEntries.values()) {
+                entries.put(new JSONObject()
+                        .put(KEY, entry.key)
+                        .put(FILE, entry.file)
+                        .put(SIZE, entry.size)
+                        .put(VERSION, entry.version));
+            }
+
+            JSONArray skipped = new JSONArray();
+            for (Entry entry : mSkipped.values()) {
+                skipped.put(new JSONObject()
+                        .put(KEY, entry.key)
+                        .put(SIZE, entry.size)
+                        .put(VERSION, entry.version));
+            }
+
+            JSONObject json = new JSONObject()
+                    .put(DASHBOARDS, dashboards)
+                    .put(ENTRIES, entries)
+                    .put(SKIPPED, skipped);
+
+            Writer writer = new OutputStreamWriter(new FileOutputStream(tempManifest), "UTF-8");
+            try {
+                writer.write(json.toString());
+            } finally {
+                writer.close();
+            }
+
+            if (!tempManifest.renameTo(manifest)) {
+                tempManifest.delete();
+            }
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+            tempManifest.delete();
+        }
+    }
+
+    private static class Entry {
+        final String key;
+        final String file;
+        final long size;
+        final String version;
+
+        Entry(String key, String file, long size, String version) {
+            this.key = key;
+            this.file = file;
+            this.size = size;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.sync;
+
+import org.hisp.dhis.android.sdk.core.persistence.preferences.ResourceType;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hisp.dhis.android.sdk.models.utils.Preconditions.isNull;
+
+/**
+ * Keeps track of syncs which are in progress for each resource type. Sync writes many rows
+ * one by one, so instead of reacting to each of them, interested parties can wait until
+ * the sync is over. Has to be accessed only from main thread.
+ */
+public final class SyncTransactions {
+    private static final Map<ResourceType, Integer> mRunningSyncs =
+            new EnumMap<>(ResourceType.class);
+    private static final List<Listener> mListeners = new ArrayList<>();
+
+    private SyncTransactions() {
+        // no instances
+    }
+
+    public static void begin(ResourceType resourceType) {
+        isNull(resourceType, "ResourceType must not be null");
+        mRunningSyncs.put(resourceType, getRunningSyncs(resourceType) + 1);
+    }
+
+    public static void end(ResourceType resourceType) {
+        isNull(resourceType, "ResourceType must not be null");
+
+        int runningSyncs = getRunningSyncs(resourceType);
+        if (runningSyncs == 0) {
+            return;
+        }
+
+        if (runningSyncs > 1) {
+            mRunningSyncs.put(resourceType, runningSyncs - 1);
+            return;
+        }
+
+        mRunningSyncs.remove(resourceType);
+
+        // listener can unregister itself from callback
+        for (Listener listener : new ArrayList<>(mListeners)) {
+            listener.onSyncFinished(resourceType);
+        }
+    }
+
+    public static boolean isInProgress(ResourceType resourceType) {
+        return getRunningSyncs(resourceType) > 0;
+    }
+
+    public static void register(Listener listener) {
+        isNull(listener, "Listener must not be null");
+
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public static void unregister(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    private static int getRunningSyncs(ResourceType resourceType) {
+        Integer runningSyncs = mRunningSyncs.get(resourceType);
+        return runningSyncs == null ? 0 : runningSyncs;
+    }
+
+    public interface Listener {
+        void onSyncFinished(ResourceType resourceType);
+    }
+}
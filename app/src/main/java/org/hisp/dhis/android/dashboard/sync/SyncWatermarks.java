@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.hisp.dhis.android.sdk.core.persistence.preferences.ResourceType;
+
+import static org.hisp.dhis.android.sdk.models.utils.Preconditions.isNull;
+
+/**
+ * Keeps track of per-resource synchronization state which is needed for
+ * delta sync: the latest server side lastUpdated value seen during sync, time of
+ * the last full sync and whether there are local changes which are not pushed yet.
+ * Content which has to be added to dashboards through server API is queued here too.
+ */
+public final class SyncWatermarks {
+    private static final String PREFERENCES = "preferences:syncWatermarks";
+    private static final String LAST_UPDATED = "lastUpdated:";
+    private static final String LAST_FULL_SYNC = "lastFullSync:";
+    private static final String HAS_LOCAL_CHANGES = "hasLocalChanges:";
+    private static final String PENDING_CONTENT = "pendingContent";
+
+    private static SyncWatermarks mSyncWatermarks;
+
+    private final SharedPreferences mPreferences;
+
+    private SyncWatermarks(Context context) {
+        mPreferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    public static void init(Context context) {
+        isNull(context, "Context must not be null");
+
+        if (mSyncWatermarks == null) {
+            mSyncWatermarks = new SyncWatermarks(context.getApplicationContext());
+        }
+    }
+
+    public static SyncWatermarks getInstance() {
+        if (mSyncWatermarks == null) {
+            throw new IllegalStateException("SyncWatermarks must be initialized first");
+        }
+
+        return mSyncWatermarks;
+    }
+
+    /* lastUpdated is stored exactly in the same format as it is returned from server */
+    public String getLastUpdated(ResourceType resourceType) {
+        return mPreferences.getString(LAST_UPDATED + resourceType.name(), null);
+    }
+
+    public void setLastUpdated(ResourceType resourceType, String lastUpdated) {
+        mPreferences.edit()
+                .putString(LAST_UPDATED + resourceType.name(), lastUpdated)
+                .apply();
+    }
+
+    public long getLastFullSync(ResourceType resourceType) {
+        return mPreferences.getLong(LAST_FULL_SYNC + resourceType.name(), 0);
+    }
+
+    public void setLastFullSync(ResourceType resourceType, long time) {
+        mPreferences.edit()
+                .putLong(LAST_FULL_SYNC + resourceType.name(), time)
+                .apply();
+    }
+
+    public boolean hasLocalChanges(ResourceType resourceType) {
+        return mPreferences.getBoolean(HAS_LOCAL_CHANGES + resourceType.name(), false);
+    }
+
+    public void setHasLocalChanges(ResourceType resourceType, boolean hasLocalChanges) {
+        mPreferences.edit()
+                .putBoolean(HAS_LOCAL_CHANGES + resourceType.name(), hasLocalChanges)
+                .apply();
+    }
+
+    /* string set returned by preferences must not be modified, so it is always copied */
+    public synchronized Set<String> getPendingContent() {
+        return new HashSet<>(mPreferences.getStringSet(PENDING_CONTENT,
+                Collections.<String>emptySet()));
+    }
+
+    public synchronized void addPendingContent(String pendingContent) {
+        Set<String> pendingContents = getPendingContent();
+        pendingContents.add(pendingContent);
+        mPreferences.edit()
+                .putStringSet(PENDING_CONTENT, pendingContents)
+                .apply();
+    }
+
+    public synchronized void removePendingContent(String pendingContent) {
+        Set<String> pendingContents = getPendingContent();
+        pendingContents.remove(pendingContent);
+        mPreferences.edit()
+                .putStringSet(PENDING_CONTENT, pendingContents)
+                .apply();
+    }
+
+    public void clear() {
+        mPreferences.edit().clear().apply();
+    }
+}
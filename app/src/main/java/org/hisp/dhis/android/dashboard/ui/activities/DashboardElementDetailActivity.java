@@ -38,8 +38,7 @@ import android.view.MenuItem;
 
 import org.hisp.dhis.android.dashboard.R;
 import org.hisp.dhis.android.dashboard.ui.fragments.ImageViewFragment;
-import org.hisp.dhis.android.dashboard.ui.fragments.WebViewFragment;
-import org.hisp.dhis.android.sdk.core.api.Dhis2;
+import org.hisp.dhis.android.dashboard.ui.fragments.ReportTableFragment;
 import org.hisp.dhis.android.sdk.models.dashboard.DashboardElement;
 import org.hisp.dhis.android.sdk.models.dashboard.DashboardItemContent;
 import org.hisp.dhis.android.sdk.models.interpretation.Interpretation;
@@ -67,13 +66,6 @@ public class DashboardElementDetailActivity extends AppCompatActivity {
         return intent;
     }
 
-    private static String buildImageUrl(String resource, String id) {
-        return Dhis2.getServerUrl().newBuilder()
-                .addPathSegment("api").addPathSegment(resource).addPathSegment(id).addPathSegment("data.png")
-                .addQueryParameter("width", "480").addQueryParameter("height", "320")
-                .toString();
-    }
-
     private long getDashboardElementId() {
         return getIntent().getLongExtra(DASHBOARD_ELEMENT_ID, -1);
     }
@@ -125,23 +117,23 @@ public class DashboardElementDetailActivity extends AppCompatActivity {
         mToolbar.setTitle(element.getDisplayName());
         switch (element.getDashboardItem().getType()) {
             case DashboardItemContent.TYPE_CHART: {
-                String request = buildImageUrl("charts", element.getUId());
-                attachFragment(ImageViewFragment.newInstance(request));
+                attachFragment(ImageViewFragment.newInstance("charts",
+                        element.getUId(), element.getDashboardItem().getLastUpdated()));
                 break;
             }
             case DashboardItemContent.TYPE_EVENT_CHART: {
-                String request = buildImageUrl("eventCharts", element.getUId());
-                attachFragment(ImageViewFragment.newInstance(request));
+                attachFragment(ImageViewFragment.newInstance("eventCharts",
+                        element.getUId(), element.getDashboardItem().getLastUpdated()));
                 break;
             }
             case DashboardItemContent.TYPE_MAP: {
-                String request = buildImageUrl("maps", element.getUId());
-                attachFragment(ImageViewFragment.newInstance(request));
+                attachFragment(ImageViewFragment.newInstance("maps",
+                        element.getUId(), element.getDashboardItem().getLastUpdated()));
                 break;
             }
             case DashboardItemContent.TYPE_REPORT_TABLE: {
                 String elementId = element.getUId();
-                attachFragment(WebViewFragment.newInstance(elementId));
+                attachFragment(ReportTableFragment.newInstance(elementId));
                 break;
             }
         }
@@ -155,18 +147,18 @@ public class DashboardElementDetailActivity extends AppCompatActivity {
         mToolbar.setTitle(element.getDisplayName());
         switch (element.getInterpretation().getType()) {
             case Interpretation.TYPE_CHART: {
-                String request = buildImageUrl("charts", element.getUId());
-                attachFragment(ImageViewFragment.newInstance(request));
+                attachFragment(ImageViewFragment.newInstance("charts",
+                        element.getUId(), element.getInterpretation().getLastUpdated()));
                 break;
             }
             case Interpretation.TYPE_MAP: {
-                String request = buildImageUrl("maps", element.getUId());
-                attachFragment(ImageViewFragment.newInstance(request));
+                attachFragment(ImageViewFragment.newInstance("maps",
+                        element.getUId(), element.getInterpretation().getLastUpdated()));
                 break;
             }
             case Interpretation.TYPE_REPORT_TABLE: {
                 String elementId = element.getUId();
-                attachFragment(WebViewFragment.newInstance(elementId));
+                attachFragment(ReportTableFragment.newInstance(elementId));
                 break;
             }
             case Interpretation.TYPE_DATA_SET_REPORT: {
@@ -29,17 +29,21 @@
 package org.hisp.dhis.android.dashboard.ui.adapters;
 
 import android.content.Context;
+import android.os.AsyncTask;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.hisp.dhis.android.sdk.models.utils.Preconditions.isNull;
 
-public abstract class AbsAdapter<T, VH extends RecyclerView.ViewHolder> extends RecyclerView.Adapter<VH> {
+public abstract class AbsAdapter<T, VH extends RecyclerView.ViewHolder> extends RecyclerView.Adapter<VH>
+        implements ListDiff.Callback<T> {
     private final Context mContext;
     private final LayoutInflater mInflater;
     private List<T> mData;
+    private DiffTask mDiffTask;
 
     public AbsAdapter(Context context, LayoutInflater inflater) {
         mContext = isNull(context, "Context object must not be null");
@@ -63,11 +67,56 @@ public abstract class AbsAdapter<T, VH extends RecyclerView.ViewHolder> extends
         }
     }
 
+    @Override
+    public long getItemId(int position) {
+        T item = getItem(position);
+        return item != null ? getStableId(item) : RecyclerView.NO_ID;
+    }
+
+    /**
+     * Adapters which have stable ids receive granular notifications
+     * computed on background thread instead of notifyDataSetChanged().
+     */
     public void swapData(List<T> data) {
-        if (mData != data) {
+        if (mDiffTask != null) {
+            mDiffTask.cancel(false);
+            mDiffTask = null;
+        }
+
+        if (mData == data) {
+            return;
+        }
+
+        if (!hasStableIds() || mData == null || mData.isEmpty() ||
+                data == null || data.isEmpty()) {
             mData = data;
             notifyDataSetChanged();
+            return;
         }
+
+        mDiffTask = new DiffTask(mData, data);
+        mDiffTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Subclasses which call setHasStableIds(true) have to return unique id for each item.
+     */
+    @Override
+    public long getStableId(T item) {
+        return RecyclerView.NO_ID;
+    }
+
+    /**
+     * Called on background thread for items with the same stable id.
+     * If contents are the same, item is not re-bound.
+     */
+    @Override
+    public boolean areContentsTheSame(T oldItem, T newItem) {
+        return false;
+    }
+
+    protected static boolean isEqual(Object first, Object second) {
+        return first == null ? second == null : first.equals(second);
     }
 
     public List<T> getData() {
@@ -81,5 +130,38 @@ public abstract class AbsAdapter<T, VH extends RecyclerView.ViewHolder> extends
     public LayoutInflater getLayoutInflater() {
         return mInflater;
     }
-}
 
+    private class DiffTask extends AsyncTask<Void, Void, ListDiff> {
+        private final List<T> mOldData;
+        private final List<T> mOldDataSnapshot;
+        private final List<T> mNewData;
+
+        DiffTask(List<T> oldData, List<T> newData) {
+            mOldData = oldData;
+            mOldDataSnapshot = new ArrayList<>(oldData);
+            mNewData = newData;
+        }
+
+        @Override
+        protected ListDiff doInBackground(Void... params) {
+            return ListDiff.calculate(mOldDataSnapshot, mNewData, AbsAdapter.this);
+        }
+
+        @Override
+        protected void onPostExecute(ListDiff diff) {
+            if (mDiffTask != this) {
+                return;
+            }
+
+            mDiffTask = null;
+            mData = mNewData;
+
+            /* old data could be modified in place while diff was computed */
+            if (diff != null && mOldData.equals(mOldDataSnapshot)) {
+                diff.dispatchUpdatesTo(AbsAdapter.this);
+            } else {
+                notifyDataSetChanged();
+            }
+        }
+    }
+}
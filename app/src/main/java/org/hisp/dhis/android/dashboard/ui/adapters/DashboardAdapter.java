@@ -28,31 +28,227 @@
 
 package org.hisp.dhis.android.dashboard.ui.adapters;
 
+import android.os.Bundle;
+import android.os.Parcelable;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
-import android.support.v4.app.FragmentPagerAdapter;
+import android.support.v4.app.FragmentTransaction;
+import android.support.v4.view.PagerAdapter;
+import android.view.View;
+import android.view.ViewGroup;
 
 import org.hisp.dhis.android.dashboard.ui.fragments.dashboard.DashboardFragment;
 import org.hisp.dhis.android.sdk.models.dashboard.Dashboard;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pager adapter which keeps at most given number of dashboard fragments alive.
+ * Pages which are attached to ViewPager are always kept, pages user has swiped away
+ * from are detached and the least recently used of them are removed once the limit
+ * is reached. Only scroll position of removed pages is kept, so that they can be
+ * re-created where user has left them. Fragments are tracked by dashboard id,
+ * which means that pages are moved instead of re-created when dashboards change.
+ */
+public class DashboardAdapter extends PagerAdapter {
+    public static final int DEFAULT_MAX_LIVE_PAGES = 8;
 
-public class DashboardAdapter extends FragmentPagerAdapter {
     private static final String EMPTY_TITLE = "";
+    private static final String TAG_PREFIX = "dashboard:";
+    private static final String STATE_LIVE_PAGES = "state:livePages";
+    private static final String STATE_SCROLL_PREFIX = "state:scroll:";
+
+    private final FragmentManager mFragmentManager;
+    private final int mMaxLivePages;
+
     private List<Dashboard> mDashboards;
+    private final Map<Long, Integer> mPositions;
+
+    /* live fragments in order of the last use; the first one is evicted first */
+    private final LinkedHashMap<Long, Fragment> mLivePages;
+
+    /* fragments which are currently kept by ViewPager */
+    private final Set<Long> mAttachedPages;
+
+    /* scroll state of pages, saved when they are detached from ViewPager */
+    private final Map<Long, Parcelable> mScrollStates;
+
+    private FragmentTransaction mCurTransaction;
+    private Fragment mCurrentPrimaryItem;
 
     public DashboardAdapter(FragmentManager fm) {
-        super(fm);
+        this(fm, DEFAULT_MAX_LIVE_PAGES);
+    }
+
+    public DashboardAdapter(FragmentManager fm, int maxLivePages) {
+        mFragmentManager = fm;
+        mMaxLivePages = maxLivePages;
+        mPositions = new HashMap<>();
+        mLivePages = new LinkedHashMap<>();
+        mAttachedPages = new HashSet<>();
+        mScrollStates = new HashMap<>();
     }
 
     @Override
-    public Fragment getItem(int position) {
-        if (mDashboards != null && mDashboards.size() > 0) {
-            return DashboardFragment
-                    .newInstance(getDashboard(position));
+    public Object instantiateItem(ViewGroup container, int position) {
+        if (mCurTransaction == null) {
+            mCurTransaction = mFragmentManager.beginTransaction();
+        }
+
+        Dashboard dashboard = getDashboard(position);
+        long dashboardId = dashboard.getId();
+        String tag = makeTag(dashboardId);
+
+        Fragment fragment = mFragmentManager.findFragmentByTag(tag);
+        if (fragment != null) {
+            mCurTransaction.attach(fragment);
         } else {
+            DashboardFragment dashboardFragment = DashboardFragment.newInstance(dashboard);
+            dashboardFragment.setScrollState(mScrollStates.get(dashboardId));
+            fragment = dashboardFragment;
+            mCurTransaction.add(container.getId(), fragment, tag);
+        }
+
+        if (fragment != mCurrentPrimaryItem) {
+            fragment.setMenuVisibility(false);
+            fragment.setUserVisibleHint(false);
+        }
+
+        // moving page to the end of eviction order
+        mLivePages.remove(dashboardId);
+        mLivePages.put(dashboardId, fragment);
+        mAttachedPages.add(dashboardId);
+        return fragment;
+    }
+
+    @Override
+    public void destroyItem(ViewGroup container, int position, Object object) {
+        if (mCurTransaction == null) {
+            mCurTransaction = mFragmentManager.beginTransaction();
+        }
+
+        Fragment fragment = (Fragment) object;
+        long dashboardId = getDashboardId(fragment);
+        mAttachedPages.remove(dashboardId);
+
+        if (!mPositions.containsKey(dashboardId)) {
+            // dashboard has been removed
+            mLivePages.remove(dashboardId);
+            mScrollStates.remove(dashboardId);
+            mCurTransaction.remove(fragment);
+            return;
+        }
+
+        if (fragment instanceof DashboardFragment) {
+            Parcelable scrollState = ((DashboardFragment) fragment).getScrollState();
+            if (scrollState != null) {
+                mScrollStates.put(dashboardId, scrollState);
+            }
+        }
+
+        mCurTransaction.detach(fragment);
+        trimLivePages();
+    }
+
+    @Override
+    public void setPrimaryItem(ViewGroup container, int position, Object object) {
+        Fragment fragment = (Fragment) object;
+        if (fragment != mCurrentPrimaryItem) {
+            if (mCurrentPrimaryItem != null) {
+                mCurrentPrimaryItem.setMenuVisibility(false);
+                mCurrentPrimaryItem.setUserVisibleHint(false);
+            }
+            if (fragment != null) {
+                fragment.setMenuVisibility(true);
+                fragment.setUserVisibleHint(true);
+            }
+            mCurrentPrimaryItem = fragment;
+        }
+    }
+
+    @Override
+    public void finishUpdate(ViewGroup container) {
+        if (mCurTransaction != null) {
+            mCurTransaction.commitAllowingStateLoss();
+            mCurTransaction = null;
+            mFragmentManager.executePendingTransactions();
+        }
+    }
+
+    @Override
+    public boolean isViewFromObject(View view, Object object) {
+        return ((Fragment) object).getView() == view;
+    }
+
+    @Override
+    public int getItemPosition(Object object) {
+        Integer position = mPositions.get(getDashboardId((Fragment) object));
+        return position != null ? position : POSITION_NONE;
+    }
+
+    @Override
+    public Parcelable saveState() {
+        Bundle state = new Bundle();
+
+        long[] livePages = new long[mLivePages.size()];
+        int index = 0;
+        for (Long dashboardId : mLivePages.keySet()) {
+            livePages[index++] = dashboardId;
+        }
+        state.putLongArray(STATE_LIVE_PAGES, livePages);
+
+        for (Map.Entry<Long, Parcelable> entry : mScrollStates.entrySet()) {
+            state.putParcelable(STATE_SCROLL_PREFIX + entry.getKey(), entry.getValue());
+        }
+        return state;
+    }
+
+    @Override
+    public void restoreState(Parcelable state, ClassLoader loader) {
+        if (!(state instanceof Bundle)) {
+            return;
+        }
+
+        Bundle bundle = (Bundle) state;
+        bundle.setClassLoader(loader);
+
+        mScrollStates.clear();
+        for (String key : bundle.keySet()) {
+            if (key.startsWith(STATE_SCROLL_PREFIX)) {
+                mScrollStates.put(Long.parseLong(key.substring(STATE_SCROLL_PREFIX.length())),
+                        bundle.getParcelable(key));
+            }
+        }
+
+        /* fragments themselves are restored by FragmentManager,
+        here we only need to know which of them are still around */
+        mLivePages.clear();
+        long[] livePages = bundle.getLongArray(STATE_LIVE_PAGES);
+        if (livePages != null) {
+            for (long dashboardId : livePages) {
+                Fragment fragment = mFragmentManager.findFragmentByTag(makeTag(dashboardId));
+                if (fragment != null) {
+                    mLivePages.put(dashboardId, fragment);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return fragment at given position if it is kept by ViewPager, null otherwise.
+     */
+    public Fragment getFragment(int position) {
+        Dashboard dashboard = getDashboard(position);
+        if (dashboard == null || !mAttachedPages.contains(dashboard.getId())) {
             return null;
         }
+        return mLivePages.get(dashboard.getId());
     }
 
     @Override
@@ -74,7 +270,7 @@ public class DashboardAdapter extends FragmentPagerAdapter {
     }
 
     public Dashboard getDashboard(int position) {
-        if (mDashboards != null && mDashboards.size() > 0) {
+        if (mDashboards != null && position >= 0 && position < mDashboards.size()) {
             return mDashboards.get(position);
         } else {
             return null;
@@ -85,8 +281,35 @@ public class DashboardAdapter extends FragmentPagerAdapter {
         boolean hasToNotifyAdapter = mDashboards != dashboards;
         mDashboards = dashboards;
 
+        mPositions.clear();
+        if (dashboards != null) {
+            for (int position = 0; position < dashboards.size(); position++) {
+                mPositions.put(dashboards.get(position).getId(), position);
+            }
+        }
+
         if (hasToNotifyAdapter) {
             notifyDataSetChanged();
         }
     }
+
+    /* removes least recently used pages which are not attached to ViewPager */
+    private void trimLivePages() {
+        Iterator<Map.Entry<Long, Fragment>> iterator = mLivePages.entrySet().iterator();
+        while (mLivePages.size() > mMaxLivePages && iterator.hasNext()) {
+            Map.Entry<Long, Fragment> entry = iterator.next();
+            if (!mAttachedPages.contains(entry.getKey())) {
+                mCurTransaction.remove(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    private static long getDashboardId(Fragment fragment) {
+        return Long.parseLong(fragment.getTag().substring(TAG_PREFIX.length()));
+    }
+
+    private static String makeTag(long dashboardId) {
+        return TAG_PREFIX + dashboardId;
+    }
 }
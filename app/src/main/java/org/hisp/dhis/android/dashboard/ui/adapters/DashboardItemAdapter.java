@@ -42,31 +42,32 @@ import android.widget.TextView;
 import com.squareup.picasso.Picasso;
 
 import org.hisp.dhis.android.dashboard.R;
+import org.hisp.dhis.android.dashboard.ui.models.DashboardItemModel;
+import org.hisp.dhis.android.dashboard.ui.views.ImagePrefetcher;
 import org.hisp.dhis.android.dashboard.utils.PicassoProvider;
-import org.hisp.dhis.android.sdk.core.api.Dhis2;
 import org.hisp.dhis.android.sdk.models.common.Access;
 import org.hisp.dhis.android.sdk.models.dashboard.DashboardElement;
 import org.hisp.dhis.android.sdk.models.dashboard.DashboardItem;
-import org.hisp.dhis.android.sdk.models.dashboard.DashboardItemContent;
 
 import java.util.List;
 
 import butterknife.Bind;
 import butterknife.ButterKnife;
 
-public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardItemAdapter.ItemViewHolder> {
-    private static final String DATE_FORMAT = "MMMM dd, YYYY";
+/**
+ * Shows dashboard items which are resolved in advance by {@link DashboardItemModel.Factory},
+ * so binding of views does not compute or format anything.
+ */
+public class DashboardItemAdapter extends AbsAdapter<DashboardItemModel, DashboardItemAdapter.ItemViewHolder>
+        implements ImagePrefetcher.ImageUrlProvider {
     private static final String EMPTY_FIELD = "";
 
     /**
-     * Basically we have three types of dashboard items:
-     * 1) Item which can be represented as image: charts, event charts, maps.
-     * 2) Item which contain tables: report table, event report.
-     * 3) Item which contains links to content: resource, reports, users.
+     * Types of rows, see {@link DashboardItemModel#VIEW_TYPE_IMAGE}.
      */
-    private static final int ITEM_WITH_IMAGE_TYPE = 0;
-    private static final int ITEM_WITH_TABLE_TYPE = 1;
-    private static final int ITEM_WITH_LIST_TYPE = 2;
+    static final int ITEM_WITH_IMAGE_TYPE = DashboardItemModel.VIEW_TYPE_IMAGE;
+    static final int ITEM_WITH_TABLE_TYPE = DashboardItemModel.VIEW_TYPE_TABLE;
+    static final int ITEM_WITH_LIST_TYPE = DashboardItemModel.VIEW_TYPE_LIST;
 
     /**
      * As dashboard access rules apply to items, we need to have it here in order to
@@ -79,121 +80,85 @@ public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardIte
      */
     private final OnItemClickListener mClickListener;
 
-    /**
-     * This is the maximum number of columns which can fit in screen for given device.
-     */
-    private final int mMaxSpanCount;
-
-    /**
-     * Some resources cached in field variables.
-     */
-    private final String mUsersName;
-    private final String mReportsName;
-    private final String mResourcesName;
-
     /**
      * Image loading utility.
      */
     private final Picasso mImageLoader;
 
     public DashboardItemAdapter(Context context, Access dashboardAccess,
-                                int maxSpanCount, OnItemClickListener clickListener) {
+                                OnItemClickListener clickListener) {
         super(context, LayoutInflater.from(context));
 
         mDashboardAccess = dashboardAccess;
-        mMaxSpanCount = maxSpanCount;
         mClickListener = clickListener;
 
-        mUsersName = context.getString(R.string.users);
-        mReportsName = context.getString(R.string.reports);
-        mResourcesName = context.getString(R.string.resources);
-
         mImageLoader = PicassoProvider.getInstance(context);
-    }
 
-    private static String buildImageUrl(String resource, String id) {
-        return Dhis2.getServerUrl().newBuilder()
-                .addPathSegment("api").addPathSegment(resource).addPathSegment(id).addPathSegment("data.png")
-                .addQueryParameter("width", "480").addQueryParameter("height", "320")
-                .toString();
+        setHasStableIds(true);
     }
 
-    /* returns type of row depending on item content type. */
     @Override
-    public int getItemViewType(int position) {
-        System.out.println("DASHBOARD_ITEM_TYPE: " + getItem(position).getType());
-
-        switch (getItem(position).getType()) {
-            case DashboardItemContent.TYPE_CHART:
-            case DashboardItemContent.TYPE_EVENT_CHART:
-            case DashboardItemContent.TYPE_MAP:
-                return ITEM_WITH_IMAGE_TYPE;
-            case DashboardItemContent.TYPE_REPORT_TABLE:
-            case DashboardItemContent.TYPE_EVENT_REPORT:
-                return ITEM_WITH_TABLE_TYPE;
-            case DashboardItemContent.TYPE_USERS:
-            case DashboardItemContent.TYPE_REPORTS:
-            case DashboardItemContent.TYPE_RESOURCES:
-                return ITEM_WITH_LIST_TYPE;
-        }
-
-        throw new IllegalArgumentException();
+    public long getStableId(DashboardItemModel model) {
+        return model.getItem().getId();
     }
 
-    public final int getSpanSize(int position) {
-        if (getItemCount() > position) {
-            DashboardItem dashboardItem = getItem(position);
-
-            String itemShape = dashboardItem.getShape();
-            if (itemShape == null) {
-                itemShape = DashboardItem.SHAPE_NORMAL;
+    @Override
+    public boolean areContentsTheSame(DashboardItemModel oldModel, DashboardItemModel newModel) {
+        DashboardItem oldItem = oldModel.getItem();
+        DashboardItem newItem = newModel.getItem();
+        if (!isEqual(oldItem.getType(), newItem.getType()) ||
+                !isEqual(oldItem.getLastUpdated(), newItem.getLastUpdated()) ||
+                !isEqual(oldModel.getTitle(), newModel.getTitle()) ||
+                !isEqual(oldModel.getImageUrl(), newModel.getImageUrl()) ||
+                oldModel.getSpanSize() != newModel.getSpanSize() ||
+                !isSameElement(oldModel.getElement(), newModel.getElement())) {
+            return false;
+        }
+
+        List<DashboardElement> oldElements = oldModel.getElements();
+        List<DashboardElement> newElements = newModel.getElements();
+        if (oldElements.size() != newElements.size()) {
+            return false;
+        }
+
+        for (int index = 0; index < oldElements.size(); index++) {
+            if (!isSameElement(oldElements.get(index), newElements.get(index))) {
+                return false;
             }
+        }
 
-            switch (itemShape) {
-                case DashboardItem.SHAPE_NORMAL: {
-                    return getSpanSizeNormal();
-                }
-                case DashboardItem.SHAPE_FULL_WIDTH: {
-                    return getSpanSizeFull();
-                }
-                case DashboardItem.SHAPE_DOUBLE_WIDTH: {
-                    return getSpanSizeDouble();
-                }
-            }
+        return true;
+    }
+
+    /* compares properties of elements which are shown within row */
+    private static boolean isSameElement(DashboardElement oldElement, DashboardElement newElement) {
+        if (oldElement == null || newElement == null) {
+            return oldElement == newElement;
         }
 
-        return 1;
+        return isEqual(oldElement.getUId(), newElement.getUId()) &&
+                isEqual(oldElement.getDisplayName(), newElement.getDisplayName());
     }
 
-    private int getSpanSizeNormal() {
-        return 1;
+    /* returns type of row depending on item content type. */
+    @Override
+    public int getItemViewType(int position) {
+        return getItem(position).getViewType();
     }
 
-    private int getSpanSizeDouble() {
-        switch (mMaxSpanCount) {
-            case 1:
-                return 1;
-            case 2:
-                return 1;
-            case 3:
-                return 2;
-            case 4:
-                return 2;
-            default:
-                return 1;
-        }
+    public final int getSpanSize(int position) {
+        DashboardItemModel model = getItem(position);
+        return model != null ? model.getSpanSize() : 1;
     }
 
     /////////////////////////////////////////////////////////////////////////
     // Generic item view handling logic.
     /////////////////////////////////////////////////////////////////////////
 
-    private int getSpanSizeFull() {
-        return mMaxSpanCount;
-    }
-
     /**
-     * Inflating all necessary views for particular viewType.
+     * Inflating all necessary views for particular viewType. View holders do not depend
+     * on dashboard they are created for, so they can be shared between dashboards
+     * through {@link DashboardItemViewPool}.
      * <p/>
      * {@inheritDoc}
      */
@@ -218,8 +183,7 @@ public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardIte
         itemBody.addView(elementContentViewHolder.getView());
 
         // Overflow menu button click listener
-        MenuButtonHandler menuButtonHandler = new MenuButtonHandler(
-                rootView.getContext(), mDashboardAccess, mClickListener);
+        MenuButtonHandler menuButtonHandler = new MenuButtonHandler(rootView.getContext());
         itemMenuButton.setOnClickListener(menuButtonHandler);
 
         return new ItemViewHolder(
@@ -228,37 +192,30 @@ public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardIte
         );
     }
 
+    /* everything is resolved by the loader, here we only assign values to views */
     @Override
     public void onBindViewHolder(ItemViewHolder holder, int position) {
-        DashboardItem item = getItem(holder.getAdapterPosition());
-
-        holder.menuButtonHandler.setDashboardItem(item);
-        holder.lastUpdated.setText(item.getLastUpdated().toString(DATE_FORMAT));
-
-        /* setting name extracted from content to TextView at top of item layout. */
-        if (DashboardItemContent.TYPE_CHART.equals(item.getType()) && item.getChart() != null) {
-            holder.itemName.setText(item.getChart().getDisplayName());
-        } else if (DashboardItemContent.TYPE_MAP.equals(item.getType()) && item.getMap() != null) {
-            holder.itemName.setText(item.getMap().getDisplayName());
-        } else if (DashboardItemContent.TYPE_EVENT_CHART.equals(item.getType()) && item.getEventChart() != null) {
-            holder.itemName.setText(item.getEventChart().getDisplayName());
-        } else if (DashboardItemContent.TYPE_REPORT_TABLE.equals(item.getType()) && item.getReportTable() != null) {
-            holder.itemName.setText(item.getReportTable().getDisplayName());
-        } else if (DashboardItemContent.TYPE_EVENT_REPORT.equals(item.getType()) && item.getEventReport() != null) {
-            holder.itemName.setText(item.getEventReport().getDisplayName());
-        } else if (DashboardItemContent.TYPE_USERS.equals(item.getType())) {
-            holder.itemName.setText(mUsersName);
-        } else if (DashboardItemContent.TYPE_REPORTS.equals(item.getType())) {
-            holder.itemName.setText(mReportsName);
-        } else if (DashboardItemContent.TYPE_RESOURCES.equals(item.getType())) {
-            holder.itemName.setText(mResourcesName);
-        }
+        DashboardItemModel model = getItem(holder.getAdapterPosition());
+
+        /* holder could have been used by other dashboard before */
+        holder.menuButtonHandler.setDashboard(mDashboardAccess, mClickListener);
+        holder.contentViewHolder.setDashboard(mDashboardAccess, mClickListener);
+        holder.menuButtonHandler.setDashboardItem(model.getItem(), model.isShareable());
+
+        holder.itemName.setText(model.getTitle());
+        holder.lastUpdated.setText(model.getLastUpdated());
 
         /* handling visibility of 3-dot menu button */
-        holder.itemMenuButton.setVisibility(
-                holder.menuButtonHandler.isMenuVisible() ? View.VISIBLE : View.GONE);
-        onBindElementContentViewHolder(holder.contentViewHolder,
-                holder.getItemViewType(), holder.getAdapterPosition());
+        holder.itemMenuButton.setVisibility(model.isMenuVisible() ? View.VISIBLE : View.GONE);
+        onBindElementContentViewHolder(holder.contentViewHolder, model);
+    }
+
+    /* holders in shared pool should not keep references to dashboard they have left */
+    @Override
+    public void onViewRecycled(ItemViewHolder holder) {
+        holder.menuButtonHandler.setDashboard(null, null);
+        holder.menuButtonHandler.setDashboardItem(null, false);
+        holder.contentViewHolder.setDashboard(null, null);
     }
 
     /**
@@ -273,88 +230,76 @@ public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardIte
             case ITEM_WITH_IMAGE_TYPE: {
                 ImageView imageView = (ImageView) getLayoutInflater()
                         .inflate(R.layout.recycler_view_dashboard_item_imageview, parent, false);
-                return new ImageItemViewHolder(imageView, mClickListener);
+                return new ImageItemViewHolder(imageView);
             }
             case ITEM_WITH_TABLE_TYPE: {
                 TextView textView = (TextView) getLayoutInflater()
                         .inflate(R.layout.recycler_view_dashboard_item_textview, parent, false);
-                return new TextItemViewHolder(textView, mClickListener);
+                return new TextItemViewHolder(textView);
             }
             case ITEM_WITH_LIST_TYPE: {
                 LinearLayout textViewContainer = (LinearLayout) getLayoutInflater()
                         .inflate(R.layout.recycler_view_dashboard_item_list, parent, false);
-                return new ListItemViewHolder(textViewContainer, mClickListener, mDashboardAccess);
+                return new ListItemViewHolder(textViewContainer);
             }
         }
         return null;
     }
 
     /* handling data */
-    private void onBindElementContentViewHolder(IElementContentViewHolder holder, int viewType, int position) {
-        switch (viewType) {
+    private void onBindElementContentViewHolder(IElementContentViewHolder holder,
+                                                DashboardItemModel model) {
+        switch (model.getViewType()) {
             case ITEM_WITH_IMAGE_TYPE: {
-                handleItemsWithImages((ImageItemViewHolder) holder, getItem(position));
+                handleItemsWithImages((ImageItemViewHolder) holder, model);
                 break;
             }
             case ITEM_WITH_TABLE_TYPE: {
-                handleItemsWithTables((TextItemViewHolder) holder, getItem(position));
+                handleItemsWithTables((TextItemViewHolder) holder, model);
                 break;
             }
             case ITEM_WITH_LIST_TYPE: {
-                handleItemsWithLists((ListItemViewHolder) holder, getItem(position));
+                handleItemsWithLists((ListItemViewHolder) holder, model);
                 break;
             }
         }
     }
 
-    /* builds the URL to image data and loads it by means of Picasso. */
-    private void handleItemsWithImages(ImageItemViewHolder holder, DashboardItem item) {
-        DashboardElement element = null;
-        String request = null;
-        if (DashboardItemContent.TYPE_CHART.equals(item.getType()) && item.getChart() != null) {
-            element = item.getChart();
-            request = buildImageUrl("charts", element.getUId());
-        } else if (DashboardItemContent.TYPE_MAP.equals(item.getType()) && item.getMap() != null) {
-            element = item.getMap();
-            request = buildImageUrl("maps", element.getUId());
-        } else if (DashboardItemContent.TYPE_EVENT_CHART.equals(item.getType()) && item.getEventChart() != null) {
-            element = item.getEventChart();
-            request = buildImageUrl("eventCharts", element.getUId());
-        }
-
-        holder.listener.setDashboardElement(element);
-        mImageLoader.load(request)
+    /* loads image by means of Picasso, URL is built in advance */
+    private void handleItemsWithImages(ImageItemViewHolder holder, DashboardItemModel model) {
+        holder.listener.setDashboardElement(model.getElement());
+        mImageLoader.load(model.getImageUrl())
                 .placeholder(R.mipmap.ic_stub_dashboard_item)
+                .tag(this)
                 .into(holder.imageView);
     }
 
+    /* returns the same URL as the one which is going to be loaded when item is bound */
+    @Override
+    public String getImageUrl(int position) {
+        DashboardItemModel model = getItem(position);
+        if (model == null) {
+            return null;
+        }
+        return model.getImageUrl();
+    }
+
+    @Override
+    public Object getImageTag() {
+        return this;
+    }
+
     /////////////////////////////////////////////////////////////////////////
     // ITEM_WITH_IMAGE_TYPE view handling logic.
     /////////////////////////////////////////////////////////////////////////
 
-    private void handleItemsWithTables(TextItemViewHolder holder, DashboardItem item) {
-        DashboardElement element = null;
-        if (DashboardItemContent.TYPE_REPORT_TABLE.equals(item.getType()) && item.getReportTable() != null) {
-            element = item.getReportTable();
-        } else if (DashboardItemContent.TYPE_EVENT_REPORT.equals(item.getType()) && item.getEventReport() != null) {
-            element = item.getEventReport();
-        }
-
-        if (element != null) {
-            holder.listener.setDashboardElement(element);
-            holder.textView.setText(element.getDisplayName());
-        }
+    private void handleItemsWithTables(TextItemViewHolder holder, DashboardItemModel model) {
+        holder.listener.setDashboardElement(model.getElement());
+        holder.textView.setText(model.getTitle());
     }
 
-    private void handleItemsWithLists(ListItemViewHolder holder, DashboardItem item) {
-        List<DashboardElement> elementList = null;
-        if (DashboardItemContent.TYPE_USERS.equals(item.getType())) {
-            elementList = item.getUsers();
-        } else if (DashboardItemContent.TYPE_REPORTS.equals(item.getType())) {
-            elementList = item.getReports();
-        } else if (DashboardItemContent.TYPE_RESOURCES.equals(item.getType())) {
-            elementList = item.getResources();
-        }
+    private void handleItemsWithLists(ListItemViewHolder holder, DashboardItemModel model) {
+        List<DashboardElement> elementList = model.getElements();
 
         /*
         * each time RecyclerView binds data to a row, we need to handle recycling properly.
@@ -374,10 +319,12 @@ public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardIte
     /* convenience method for removing dashboard items with animations */
     public void removeItem(DashboardItem item) {
         if (getData() != null) {
-            int truePosition = getData().indexOf(item);
-            if (!(truePosition < 0)) {
-                getData().remove(truePosition);
-                notifyItemRemoved(truePosition);
+            for (int position = 0; position < getData().size(); position++) {
+                if (getData().get(position).getItem().getId() == item.getId()) {
+                    getData().remove(position);
+                    notifyItemRemoved(position);
+                    return;
+                }
             }
         }
     }
@@ -389,6 +336,8 @@ public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardIte
 
     interface IElementContentViewHolder {
         View getView();
+
+        void setDashboard(Access dashboardAccess, OnItemClickListener listener);
     }
 
     public interface OnItemClickListener {
@@ -429,11 +378,11 @@ public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardIte
     }
 
     static class OnElementInternalClickListener implements View.OnClickListener {
-        final OnItemClickListener mListener;
+        OnItemClickListener mListener;
         DashboardElement mElement;
 
-        OnElementInternalClickListener(OnItemClickListener listener) {
-            this.mListener = listener;
+        public void setListener(OnItemClickListener listener) {
+            mListener = listener;
         }
 
         public void setDashboardElement(DashboardElement element) {
@@ -442,6 +391,10 @@ public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardIte
 
         @Override
         public void onClick(View view) {
+            if (mListener == null) {
+                return;
+            }
+
             switch (view.getId()) {
                 case R.id.dashboard_item_image: {
                     mListener.onContentClick(mElement);
@@ -460,10 +413,10 @@ public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardIte
         final OnElementInternalClickListener listener;
         final ImageView imageView;
 
-        public ImageItemViewHolder(ImageView view, OnItemClickListener outerListener) {
+        public ImageItemViewHolder(ImageView view) {
             imageView = view;
 
-            listener = new OnElementInternalClickListener(outerListener);
+            listener = new OnElementInternalClickListener();
             imageView.setOnClickListener(listener);
         }
 
@@ -471,16 +424,21 @@ public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardIte
         public View getView() {
             return imageView;
         }
+
+        @Override
+        public void setDashboard(Access dashboardAccess, OnItemClickListener outerListener) {
+            listener.setListener(outerListener);
+        }
     }
 
     static class TextItemViewHolder implements IElementContentViewHolder {
         final OnElementInternalClickListener listener;
         final TextView textView;
 
-        public TextItemViewHolder(TextView view, OnItemClickListener outerListener) {
+        public TextItemViewHolder(TextView view) {
             textView = view;
 
-            listener = new OnElementInternalClickListener(outerListener);
+            listener = new OnElementInternalClickListener();
             textView.setOnClickListener(this.listener);
         }
 
@@ -488,6 +446,11 @@ public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardIte
         public View getView() {
             return textView;
         }
+
+        @Override
+        public void setDashboard(Access dashboardAccess, OnItemClickListener outerListener) {
+            listener.setListener(outerListener);
+        }
     }
 
     /* on content click listener (handles clicks both for items and delete buttons) */
@@ -495,7 +458,7 @@ public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardIte
         private List<DashboardElement> mElements;
         private OnItemClickListener mListener;
 
-        public OnListElementInternalClickListener(OnItemClickListener listener) {
+        public void setListener(OnItemClickListener listener) {
             mListener = listener;
         }
 
@@ -505,6 +468,10 @@ public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardIte
 
         @Override
         public void onClick(View view) {
+            if (mListener == null) {
+                return;
+            }
+
             switch (view.getId()) {
                 case R.id.element_item_0: {
                     onContentClick(0);
@@ -600,9 +567,9 @@ public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardIte
         }
 
         static final class ElementItemButtonsSetter implements ButterKnife.Setter<View, List<DashboardElement>> {
-            private final Access mDashboardAccess;
+            private Access mDashboardAccess;
 
-            public ElementItemButtonsSetter(Access dashboardAccess) {
+            public void setDashboardAccess(Access dashboardAccess) {
                 mDashboardAccess = dashboardAccess;
             }
 
@@ -610,7 +577,7 @@ public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardIte
             public void set(View view, List<DashboardElement> elements, int index) {
                 DashboardElement element = getElement(elements, index);
 
-                if (element == null || !mDashboardAccess.isUpdate()) {
+                if (element == null || mDashboardAccess == null || !mDashboardAccess.isUpdate()) {
                     view.setVisibility(View.INVISIBLE);
                 } else {
                     view.setVisibility(View.VISIBLE);
@@ -648,12 +615,12 @@ public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardIte
         })
         List<View> elementItemDeleteButtons;
 
-        public ListItemViewHolder(View view, OnItemClickListener listener, Access dashboardAccess) {
+        public ListItemViewHolder(View view) {
             ELEMENT_ITEMS_SETTER = new ElementItemsSetter();
-            ELEMENT_ITEM_BUTTONS_SETTER = new ElementItemButtonsSetter(dashboardAccess);
+            ELEMENT_ITEM_BUTTONS_SETTER = new ElementItemButtonsSetter();
 
             itemElementsContainer = view;
-            onListElementInternalClickListener = new OnListElementInternalClickListener(listener);
+            onListElementInternalClickListener = new OnListElementInternalClickListener();
 
             ButterKnife.bind(this, view);
             ButterKnife.apply(elementItems, new ButterKnife.Action<View>() {
@@ -682,6 +649,12 @@ public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardIte
         public View getView() {
             return itemElementsContainer;
         }
+
+        @Override
+        public void setDashboard(Access dashboardAccess, OnItemClickListener listener) {
+            ELEMENT_ITEM_BUTTONS_SETTER.setDashboardAccess(dashboardAccess);
+            onListElementInternalClickListener.setListener(listener);
+        }
     }
 
     private static class MenuButtonHandler implements View.OnClickListener {
@@ -696,40 +669,35 @@ public class DashboardItemAdapter extends AbsAdapter<DashboardItem, DashboardIte
 
         /* access which we will use in order to determine
         if user has access to particular actions */
-        final Access mDashboardAccess;
-        final OnItemClickListener mListener;
+        Access mDashboardAccess;
+        OnItemClickListener mListener;
 
         /* dashboard item will change on each call to onBindViewHolder() in recycler view */
         DashboardItem mDashboardItem;
+        boolean mIsItemShareable;
 
-        public MenuButtonHandler(Context context, Access dashboardAccess,
-                                 OnItemClickListener listener) {
+        public MenuButtonHandler(Context context) {
             mContext = context;
+        }
+
+        /* dashboard can change too, as view holders are shared between dashboards */
+        public void setDashboard(Access dashboardAccess, OnItemClickListener listener) {
             mDashboardAccess = dashboardAccess;
             mListener = listener;
         }
 
-        public void setDashboardItem(DashboardItem dashboardItem) {
+        public void setDashboardItem(DashboardItem dashboardItem, boolean isItemShareable) {
             mDashboardItem = dashboardItem;
-        }
-
-        /* helper method for client code, which allows to
-        determine if we need to show 3-dot button*/
-        public boolean isMenuVisible() {
-            return isItemShareable() || isDashboardUpdatable();
+            mIsItemShareable = isItemShareable;
         }
 
         /* helper method which returns true if we can show share menu item */
         private boolean isItemShareable() {
-            return mDashboardItem != null && (
-                    DashboardItemContent.TYPE_CHART.equals(mDashboardItem.getType()) ||
-                            DashboardItemContent.TYPE_MAP.equals(mDashboardItem.getType()) ||
-                            DashboardItemContent.TYPE_REPORT_TABLE.equals(mDashboardItem.getType())
-            );
+            return mDashboardItem != null && mIsItemShareable;
         }
 
         private boolean isDashboardUpdatable() {
-            return mDashboardAccess.isUpdate();
+            return mDashboardAccess != null && mDashboardAccess.isUpdate();
         }
 
         /* here we will build popup menu and show it. */
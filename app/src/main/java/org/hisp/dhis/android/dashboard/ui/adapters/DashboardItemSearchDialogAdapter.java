@@ -16,6 +16,8 @@
 
 package org.hisp.dhis.android.dashboard.ui.adapters;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -27,32 +29,48 @@ import android.widget.TextView;
 import org.hisp.dhis.android.dashboard.R;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class DashboardItemSearchDialogAdapter extends BaseAdapter implements Filterable {
+    /* queries typed in quick succession are filtered only once */
+    private static final long FILTER_DELAY = 100;
+
+    private final LayoutInflater mInflater;
+    private final Handler mHandler;
+    private final Runnable mFilterRunnable;
     /**
-     * Lock used to modify the content of {@link #mObjects}. Any write operation
-     * performed on the array should be synchronized on this lock. This lock is also
-     * used by the filter (see {@link #getFilter()} to make a synchronized copy of
-     * the original array of data.
+     * Incremented with each new query, so that filtering
+     * of previous one can be abandoned in the middle.
      */
-    private final Object mLock = new Object();
-    private final LayoutInflater mInflater;
+    private final AtomicInteger mQueryGeneration;
     /**
      * Contains the list of objects that represent the data of this ArrayAdapter.
      * The content of this list is referred to as "the array" in the documentation.
      */
     private List<OptionAdapterValue> mObjects;
-    // A copy of the original mObjects array, initialized from and then used instead as soon as
-    // the mFilter ArrayFilter is used. mObjects will then only contain the filtered values.
-    private ArrayList<OptionAdapterValue> mOriginalValues;
+    /**
+     * Index of all values passed to {@link #swapData(List)}. It is
+     * replaced as a whole, so filter can read it from background thread.
+     */
+    private volatile SearchIndex<OptionAdapterValue> mIndex;
+    private CharSequence mConstraint;
+    private CharSequence mPendingQuery;
     private ArrayFilter mFilter;
 
     public DashboardItemSearchDialogAdapter(LayoutInflater inflater) {
         mInflater = inflater;
         mObjects = new ArrayList<>();
+        mIndex = new SearchIndex<>(mObjects, new ArrayList<String>());
+        mQueryGeneration = new AtomicInteger();
+        mHandler = new Handler(Looper.getMainLooper());
+        mFilterRunnable = new Runnable() {
+            @Override
+            public void run() {
+                getFilter().filter(mPendingQuery);
+            }
+        };
     }
 
     /**
@@ -126,41 +144,40 @@ public class DashboardItemSearchDialogAdapter extends BaseAdapter implements Fil
         return mFilter;
     }
 
+    /**
+     * Filters values by query after short delay. Filtering of previous
+     * query is cancelled, if it has not finished yet.
+     */
+    public void filter(CharSequence query) {
+        mPendingQuery = query;
+        mQueryGeneration.incrementAndGet();
+
+        mHandler.removeCallbacks(mFilterRunnable);
+        mHandler.postDelayed(mFilterRunnable, FILTER_DELAY);
+    }
+
+    public void cancelFiltering() {
+        mQueryGeneration.incrementAndGet();
+        mHandler.removeCallbacks(mFilterRunnable);
+    }
+
     public void swapData(List<OptionAdapterValue> values) {
         if (values == null) {
             values = new ArrayList<>();
         }
 
-        clear();
-        addAll(values);
-        notifyDataSetChanged();
-    }
-
-    /**
-     * Adds the specified Collection at the end of the array.
-     *
-     * @param collection The Collection to add at the end of the array.
-     */
-    private void addAll(Collection<OptionAdapterValue> collection) {
-        synchronized (mLock) {
-            if (mOriginalValues != null) {
-                mOriginalValues.addAll(collection);
-            } else {
-                mObjects.addAll(collection);
-            }
+        List<String> labels = new ArrayList<>(values.size());
+        for (OptionAdapterValue value : values) {
+            labels.add(value.label);
         }
-    }
 
-    /**
-     * Remove all elements from the list.
-     */
-    private void clear() {
-        synchronized (mLock) {
-            if (mOriginalValues != null) {
-                mOriginalValues.clear();
-            } else {
-                mObjects.clear();
-            }
+        mIndex = new SearchIndex<>(values, labels);
+        mObjects = mIndex.getItems();
+        notifyDataSetChanged();
+
+        // results of the current query have to be found in new data
+        if (mConstraint != null && mConstraint.length() > 0) {
+            getFilter().filter(mConstraint);
         }
     }
 
@@ -176,9 +193,17 @@ public class DashboardItemSearchDialogAdapter extends BaseAdapter implements Fil
         public final String id;
         public final String label;
 
+        /* type of dashboard item content, if value was not found in local database */
+        public final String type;
+
         public OptionAdapterValue(String id, String label) {
+            this(id, label, null);
+        }
+
+        public OptionAdapterValue(String id, String label, String type) {
             this.id = id;
             this.label = label;
+            this.type = type;
         }
 
         private static boolean objectsEqual(Object a, Object b) {
@@ -202,72 +227,48 @@ public class DashboardItemSearchDialogAdapter extends BaseAdapter implements Fil
 
     /**
      * <p>An array filter constrains the content of the array adapter with
-     * a prefix. Each item that does not start with the supplied prefix
-     * is removed from the list.</p>
+     * a query. Each item which has no word starting with every word of query
+     * is removed from the list, the rest is ranked by {@link SearchIndex}.</p>
      */
     private class ArrayFilter extends Filter {
 
         @Override
         protected FilterResults performFiltering(CharSequence prefix) {
-            FilterResults results = new FilterResults();
+            SearchIndex<OptionAdapterValue> index = mIndex;
+            final int generation = mQueryGeneration.get();
 
-            if (mOriginalValues == null) {
-                synchronized (mLock) {
-                    mOriginalValues = new ArrayList<>(mObjects);
+            List<OptionAdapterValue> values = index.search(prefix, new SearchIndex.Cancellable() {
+                @Override
+                public boolean isCancelled() {
+                    return mQueryGeneration.get() != generation;
                 }
-            }
+            });
 
-            if (prefix == null || prefix.length() == 0) {
-                ArrayList<OptionAdapterValue> list;
-                synchronized (mLock) {
-                    list = new ArrayList<>(mOriginalValues);
-                }
-                results.values = list;
-                results.count = list.size();
-            } else {
-                String prefixString = prefix.toString().toLowerCase();
-
-                ArrayList<OptionAdapterValue> values;
-                synchronized (mLock) {
-                    values = new ArrayList<>(mOriginalValues);
-                }
-
-                final int count = values.size();
-                final ArrayList<OptionAdapterValue> newValues = new ArrayList<>();
-
-                for (int i = 0; i < count; i++) {
-                    final OptionAdapterValue optionValue = values.get(i);
-                    final String value = optionValue.label;
-                    final String valueText = value.toLowerCase();
-
-                    // First match against the whole, non-splitted value
-                    if (valueText.startsWith(prefixString)) {
-                        newValues.add(optionValue);
-                    } else {
-                        final String[] words = valueText.split(" ");
-                        final int wordCount = words.length;
-
-                        // Start at index 0, in case valueText starts with space(s)
-                        for (int k = 0; k < wordCount; k++) {
-                            if (words[k].startsWith(prefixString)) {
-                                newValues.add(optionValue);
-                                break;
-                            }
-                        }
-                    }
-                }
-
-                results.values = newValues;
-                results.count = newValues.size();
+            FilterResults results = new FilterResults();
+            if (values != null) {
+                results.values = new SearchResult(index, values);
+                results.count = values.size();
             }
-
             return results;
         }
 
         @Override
         protected void publishResults(CharSequence constraint, FilterResults results) {
-            //noinspection unchecked
-            mObjects = (List<OptionAdapterValue>) results.values;
+            // newer query is going to be filtered
+            if (results.values == null) {
+                return;
+            }
+
+            mConstraint = constraint;
+
+            // data was swapped while filtering, query has to be repeated on new data
+            SearchResult result = (SearchResult) results.values;
+            if (result.index != mIndex) {
+                filter(constraint);
+                return;
+            }
+
+            mObjects = result.values;
             if (results.count > 0) {
                 notifyDataSetChanged();
             } else {
@@ -275,4 +276,14 @@ public class DashboardItemSearchDialogAdapter extends BaseAdapter implements Fil
             }
         }
     }
-}
\ No newline at end of file
+
+    private static class SearchResult {
+        final SearchIndex<OptionAdapterValue> index;
+        final List<OptionAdapterValue> values;
+
+        SearchResult(SearchIndex<OptionAdapterValue> index, List<OptionAdapterValue> values) {
+            this.index = index;
+            this.values = values;
+        }
+    }
+}
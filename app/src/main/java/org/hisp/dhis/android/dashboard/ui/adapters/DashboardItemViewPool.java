@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.ui.adapters;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * View pool which is shared by RecyclerViews of all dashboard pages, so that
+ * swiping to another dashboard re-uses item views instead of inflating new ones.
+ * Pool can be filled in advance: view holders are inflated one by one while main
+ * thread is idle, so that warm-up never competes with drawing of frames.
+ */
+public class DashboardItemViewPool extends RecyclerView.RecycledViewPool {
+
+    /* number of rows of each type kept in pool, multiplied by span count */
+    private static final int IMAGE_ROWS = 4;
+    private static final int TABLE_ROWS = 2;
+    private static final int LIST_ROWS = 2;
+
+    private static final int[] VIEW_TYPES = {
+            DashboardItemAdapter.ITEM_WITH_IMAGE_TYPE,
+            DashboardItemAdapter.ITEM_WITH_TABLE_TYPE,
+            DashboardItemAdapter.ITEM_WITH_LIST_TYPE
+    };
+
+    private final int[] mMaxCounts;
+    private final int[] mWarmUpCounts;
+
+    private WarmUpHandler mWarmUpHandler;
+    private boolean mIsWarmedUp;
+
+    public DashboardItemViewPool(int spanCount) {
+        mMaxCounts = new int[]{
+                spanCount * IMAGE_ROWS,
+                spanCount * TABLE_ROWS,
+                spanCount * LIST_ROWS
+        };
+        mWarmUpCounts = new int[VIEW_TYPES.length];
+
+        for (int index = 0; index < VIEW_TYPES.length; index++) {
+            setMaxRecycledViews(VIEW_TYPES[index], mMaxCounts[index]);
+        }
+    }
+
+    /**
+     * Starts filling pool with view holders of each type while main thread is idle.
+     * Does nothing if pool has been warmed up already.
+     *
+     * @param recyclerView RecyclerView with layout manager, used as parent of inflated views.
+     * @param adapter      adapter which creates view holders.
+     */
+    public void warmUp(RecyclerView recyclerView, DashboardItemAdapter adapter) {
+        if (mIsWarmedUp || mWarmUpHandler != null) {
+            return;
+        }
+
+        mWarmUpHandler = new WarmUpHandler(recyclerView, adapter);
+        Looper.myQueue().addIdleHandler(mWarmUpHandler);
+    }
+
+    /**
+     * Stops warm-up, has to be called when views of dashboards are destroyed.
+     */
+    public void cancelWarmUp() {
+        if (mWarmUpHandler != null) {
+            Looper.myQueue().removeIdleHandler(mWarmUpHandler);
+            mWarmUpHandler = null;
+        }
+    }
+
+    /**
+     * Stops warm-up only if it was started with given RecyclerView, has to be called
+     * when view of dashboard page is destroyed. Another page can start it again later.
+     */
+    public void cancelWarmUp(RecyclerView recyclerView) {
+        if (mWarmUpHandler != null && mWarmUpHandler.mRecyclerView == recyclerView) {
+            cancelWarmUp();
+        }
+    }
+
+    private class WarmUpHandler implements MessageQueue.IdleHandler {
+        private final RecyclerView mRecyclerView;
+        private final DashboardItemAdapter mAdapter;
+
+        WarmUpHandler(RecyclerView recyclerView, DashboardItemAdapter adapter) {
+            mRecyclerView = recyclerView;
+            mAdapter = adapter;
+        }
+
+        /* inflates one view holder per call, returns false once pool is full */
+        @Override
+        public boolean queueIdle() {
+            for (int index = 0; index < VIEW_TYPES.length; index++) {
+                if (mWarmUpCounts[index] < mMaxCounts[index]) {
+                    putRecycledView(mAdapter.createViewHolder(mRecyclerView, VIEW_TYPES[index]));
+                    mWarmUpCounts[index]++;
+                    return true;
+                }
+            }
+
+            mIsWarmedUp = true;
+            mWarmUpHandler = null;
+            return false;
+        }
+    }
+}
@@ -41,8 +41,8 @@ import com.squareup.picasso.Picasso;
 
 import org.hisp.dhis.android.dashboard.R;
 import org.hisp.dhis.android.dashboard.ui.adapters.InterpretationAdapter.InterpretationHolder;
+import org.hisp.dhis.android.dashboard.utils.ImageRequestPlanner;
 import org.hisp.dhis.android.dashboard.utils.PicassoProvider;
-import org.hisp.dhis.android.sdk.core.api.Dhis2;
 import org.hisp.dhis.android.sdk.models.interpretation.Interpretation;
 import org.hisp.dhis.android.sdk.models.interpretation.InterpretationElement;
 
@@ -66,19 +66,37 @@ public final class InterpretationAdapter extends AbsAdapter<Interpretation, Inte
      */
     private final Picasso mImageLoader;
 
+    /**
+     * Chooses size of requested images depending on space they occupy.
+     */
+    private final ImageRequestPlanner mImageRequestPlanner;
+
     public InterpretationAdapter(Context context, LayoutInflater inflater,
                                  OnItemClickListener clickListener) {
         super(context, inflater);
 
         mClickListener = clickListener;
         mImageLoader = PicassoProvider.getInstance(context);
+        mImageRequestPlanner = new ImageRequestPlanner(context,
+                context.getResources().getInteger(R.integer.column_nums));
+
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getStableId(Interpretation interpretation) {
+        return interpretation.getId();
+    }
+
+    @Override
+    public boolean areContentsTheSame(Interpretation oldItem, Interpretation newItem) {
+        return isEqual(oldItem.getLastUpdated(), newItem.getLastUpdated()) &&
+                getCommentsCount(oldItem) == getCommentsCount(newItem);
     }
 
-    private static String buildImageUrl(String resource, String id) {
-        return Dhis2.getServerUrl().newBuilder()
-                .addPathSegment("api").addPathSegment(resource).addPathSegment(id).addPathSegment("data.png")
-                .addQueryParameter("width", "480").addQueryParameter("height", "320")
-                .toString();
+    private static int getCommentsCount(Interpretation interpretation) {
+        return interpretation.getComments() == null
+                ? 0 : interpretation.getComments().size();
     }
 
     /* returns type of row depending on item content type. */
@@ -177,8 +195,7 @@ public final class InterpretationAdapter extends AbsAdapter<Interpretation, Inte
         holder.interpretationTextMoreIcon.setVisibility(isDropDownVisible
                 ? View.VISIBLE : View.INVISIBLE); */
 
-        int commentsCount = interpretation.getComments() == null
-                ? 0 : interpretation.getComments().size();
+        int commentsCount = getCommentsCount(interpretation);
         String commentsCountString = commentsCount > 99
                 ? "99+" : commentsCount + "";
         holder.commentsCountTextView.setText(commentsCountString);
@@ -221,10 +238,12 @@ public final class InterpretationAdapter extends AbsAdapter<Interpretation, Inte
         String request = null;
         if (Interpretation.TYPE_CHART.equals(item.getType()) && item.getChart() != null) {
             InterpretationElement element = item.getChart();
-            request = buildImageUrl("charts", element.getUId());
+            request = mImageRequestPlanner.buildImageUrl("charts",
+                    element.getUId(), item.getLastUpdated(), 1);
         } else if (Interpretation.TYPE_MAP.equals(item.getType()) && item.getMap() != null) {
             InterpretationElement element = item.getMap();
-            request = buildImageUrl("maps", element.getUId());
+            request = mImageRequestPlanner.buildImageUrl("maps",
+                    element.getUId(), item.getLastUpdated(), 1);
         }
 
         holder.listener.setInterpretation(item);
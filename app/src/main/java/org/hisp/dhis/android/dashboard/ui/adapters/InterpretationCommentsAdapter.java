@@ -63,6 +63,19 @@ public final class InterpretationCommentsAdapter extends AbsAdapter<Interpretati
 
         mListener = listener;
         mUser = user;
+
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getStableId(InterpretationComment comment) {
+        return comment.getId();
+    }
+
+    @Override
+    public boolean areContentsTheSame(InterpretationComment oldItem, InterpretationComment newItem) {
+        return isEqual(oldItem.getLastUpdated(), newItem.getLastUpdated()) &&
+                isEqual(oldItem.getText(), newItem.getText());
     }
 
     @Override
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.ui.adapters;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes the set of granular RecyclerView notifications (removals, insertions, moves
+ * and changes) which turns old list into new one. Items are matched by stable ids.
+ * Computation does not touch the adapter, so it can be done on background thread.
+ */
+final class ListDiff {
+    private static final int REMOVE = 0;
+    private static final int INSERT = 1;
+    private static final int MOVE = 2;
+    private static final int CHANGE = 3;
+
+    /* each operation is stored as {type, position/from, count/to} */
+    private final List<int[]> mOperations;
+
+    private ListDiff(List<int[]> operations) {
+        mOperations = operations;
+    }
+
+    /**
+     * @return difference between lists or null if items
+     * do not have unique stable ids and cannot be matched.
+     */
+    static <T> ListDiff calculate(List<T> oldList, List<T> newList, Callback<T> callback) {
+        long[] oldIds = getStableIds(oldList, callback);
+        long[] newIds = getStableIds(newList, callback);
+        Map<Long, Integer> oldPositions = mapPositions(oldIds);
+        Map<Long, Integer> newPositions = mapPositions(newIds);
+
+        if (oldPositions == null || newPositions == null) {
+            return null;
+        }
+
+        List<int[]> operations = new ArrayList<>();
+
+        /* removals go from the end of list, so positions of next ones are not shifted */
+        List<Long> working = new ArrayList<>();
+        for (int position = oldIds.length - 1; position >= 0; position--) {
+            if (newPositions.containsKey(oldIds[position])) {
+                working.add(0, oldIds[position]);
+            } else {
+                int[] last = getLast(operations);
+                if (last != null && last[1] == position + 1) {
+                    last[1] = position;
+                    last[2]++;
+                } else {
+                    operations.add(new int[]{REMOVE, position, 1});
+                }
+            }
+        }
+
+        /* items which are already in the right relative order never move */
+        Set<Long> stableIds = findStableIds(working, newPositions);
+
+        /* each item is placed right after the one which precedes it in new list; stable
+        items already follow each other in that order, so only the others have to be moved */
+        for (int position = 0; position < newIds.length; position++) {
+            long id = newIds[position];
+            int target = position == 0 ? 0 : working.indexOf(newIds[position - 1]) + 1;
+
+            if (!oldPositions.containsKey(id)) {
+                working.add(target, id);
+
+                int[] last = getLast(operations);
+                if (last != null && last[0] == INSERT && last[1] + last[2] == target) {
+                    last[2]++;
+                } else {
+                    operations.add(new int[]{INSERT, target, 1});
+                }
+            } else if (!stableIds.contains(id)) {
+                int from = working.indexOf(id);
+                int to = from < target ? target - 1 : target;
+                if (from != to) {
+                    working.add(to, working.remove(from));
+                    operations.add(new int[]{MOVE, from, to});
+                }
+            }
+        }
+
+        for (int position = 0; position < newIds.length; position++) {
+            Integer oldPosition = oldPositions.get(newIds[position]);
+            if (oldPosition == null || callback.areContentsTheSame(
+                    oldList.get(oldPosition), newList.get(position))) {
+                continue;
+            }
+
+            int[] last = getLast(operations);
+            if (last != null && last[0] == CHANGE && last[1] + last[2] == position) {
+                last[2]++;
+            } else {
+                operations.add(new int[]{CHANGE, position, 1});
+            }
+        }
+
+        return new ListDiff(operations);
+    }
+
+    void dispatchUpdatesTo(final RecyclerView.Adapter<?> adapter) {
+        dispatchUpdatesTo(new UpdateCallback() {
+            @Override
+            public void onRemoved(int position, int count) {
+                adapter.notifyItemRangeRemoved(position, count);
+            }
+
+            @Override
+            public void onInserted(int position, int count) {
+                adapter.notifyItemRangeInserted(position, count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                adapter.notifyItemMoved(fromPosition, toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count) {
+                adapter.notifyItemRangeChanged(position, count);
+            }
+        });
+    }
+
+    void dispatchUpdatesTo(UpdateCallback callback) {
+        for (int[] operation : mOperations) {
+            switch (operation[0]) {
+                case REMOVE: {
+                    callback.onRemoved(operation[1], operation[2]);
+                    break;
+                }
+                case INSERT: {
+                    callback.onInserted(operation[1], operation[2]);
+                    break;
+                }
+                case MOVE: {
+                    callback.onMoved(operation[1], operation[2]);
+                    break;
+                }
+                case CHANGE: {
+                    callback.onChanged(operation[1], operation[2]);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static <T> long[] getStableIds(List<T> items, Callback<T> callback) {
+        long[] ids = new long[items.size()];
+        for (int position = 0; position < ids.length; position++) {
+            ids[position] = callback.getStableId(items.get(position));
+        }
+        return ids;
+    }
+
+    private static Map<Long, Integer> mapPositions(long[] ids) {
+        Map<Long, Integer> positions = new HashMap<>();
+        for (int position = 0; position < ids.length; position++) {
+            if (ids[position] == RecyclerView.NO_ID ||
+                    positions.put(ids[position], position) != null) {
+                return null;
+            }
+        }
+        return positions;
+    }
+
+    private static int[] getLast(List<int[]> operations) {
+        return operations.isEmpty() ? null : operations.get(operations.size() - 1);
+    }
+
+    /* longest increasing subsequence of new positions of items kept from old list */
+    private static Set<Long> findStableIds(List<Long> ids, Map<Long, Integer> newPositions) {
+        int size = ids.size();
+        int[] tails = new int[size];
+        int[] previous = new int[size];
+        int length = 0;
+
+        for (int index = 0; index < size; index++) {
+            int newPosition = newPositions.get(ids.get(index));
+
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (newPositions.get(ids.get(tails[middle])) < newPosition) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            previous[index] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = index;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        Set<Long> stableIds = new HashSet<>();
+        for (int index = length > 0 ? tails[length - 1] : -1; index >= 0; index = previous[index]) {
+            stableIds.add(ids.get(index));
+        }
+        return stableIds;
+    }
+
+    interface Callback<T> {
+        long getStableId(T item);
+
+        boolean areContentsTheSame(T oldItem, T newItem);
+    }
+
+    /* receives operations in the same order and with the same positions as adapter */
+    interface UpdateCallback {
+        void onRemoved(int position, int count);
+
+        void onInserted(int position, int count);
+
+        void onMoved(int fromPosition, int toPosition);
+
+        void onChanged(int position, int count);
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.ui.adapters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Index of words in labels of items which answers word prefix queries. All words are
+ * kept in one sorted array, so items containing words which start with given prefix
+ * are found by binary search. Index is built once and then can be queried from any
+ * thread; buffers used during search are reused between queries.
+ *
+ * <p>Query matches item if each of its words is a prefix of some word in label.
+ * Results are ranked: labels which start with the whole query go first, then labels
+ * where matches are whole words or first words, then shorter labels.</p>
+ *
+ * <p>When query only extends the previous one (user typed one more character),
+ * results can only shrink, so previous results are refined instead of looking
+ * up the whole index, if there are fewer of them than words to look at.</p>
+ */
+final class SearchIndex<T> {
+    private static final int SCORE_LABEL_PREFIX = 8;
+    private static final int SCORE_FIRST_WORD = 2;
+    private static final int SCORE_WHOLE_WORD = 1;
+    private static final int MAX_SCORE = 0xFFFF;
+
+    /* cancellation is checked once per this many items */
+    private static final int CANCELLATION_CHECK_MASK = 0xFF;
+
+    /* sort keys pack score, label length and position into one long */
+    private static final int MAX_POSITION = (1 << 24) - 1;
+    private static final int MAX_LENGTH = (1 << 16) - 1;
+
+    private final List<T> mItems;
+    private final String[] mLabels;
+    private final String[][] mItemWords;
+
+    /* words and the items (and positions in label) they come from, sorted by words */
+    private final String[] mWords;
+    private final int[] mWordItems;
+    private final int[] mWordPositions;
+
+    /* per item state of current query: generation of query which touched item
+    the last time, number of query words matched so far and accumulated score */
+    private final int[] mGenerations;
+    private final int[] mMatched;
+    private final int[] mScores;
+    private final int[] mWordScores;
+    private final int[] mCandidates;
+    private final int[] mResults;
+    private final long[] mSortKeys;
+    private int mGeneration;
+
+    /* normalized previous query and items it has matched */
+    private final int[] mLastResults;
+    private int mLastResultCount;
+    private String mLastQuery;
+
+    SearchIndex(List<T> items, List<String> labels) {
+        if (items.size() > MAX_POSITION) {
+            throw new IllegalArgumentException("Too many items: " + items.size());
+        }
+
+        mItems = Collections.unmodifiableList(new ArrayList<>(items));
+        mLabels = new String[labels.size()];
+        mItemWords = new String[labels.size()][];
+
+        List<String> words = new ArrayList<>();
+        List<int[]> origins = new ArrayList<>();
+        for (int item = 0; item < mLabels.length; item++) {
+            mLabels[item] = normalize(labels.get(item));
+
+            List<String> itemWords = split(mLabels[item]);
+            mItemWords[item] = itemWords.toArray(new String[itemWords.size()]);
+            for (int position = 0; position < itemWords.size(); position++) {
+                words.add(itemWords.get(position));
+                origins.add(new int[]{item, position});
+            }
+        }
+
+        Integer[] order = new Integer[words.size()];
+        for (int index = 0; index < order.length; index++) {
+            order[index] = index;
+        }
+        final List<String> unsorted = words;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                return unsorted.get(first).compareTo(unsorted.get(second));
+            }
+        });
+
+        mWords = new String[order.length];
+        mWordItems = new int[order.length];
+        mWordPositions = new int[order.length];
+        for (int index = 0; index < order.length; index++) {
+            mWords[index] = words.get(order[index]);
+            mWordItems[index] = origins.get(order[index])[0];
+            mWordPositions[index] = origins.get(order[index])[1];
+        }
+
+        mGenerations = new int[mLabels.length];
+        mMatched = new int[mLabels.length];
+        mScores = new int[mLabels.length];
+        mWordScores = new int[mLabels.length];
+        mCandidates = new int[mLabels.length];
+        mResults = new int[mLabels.length];
+        mSortKeys = new long[mLabels.length];
+        mLastResults = new int[mLabels.length];
+    }
+
+    List<T> getItems() {
+        return mItems;
+    }
+
+    /**
+     * @param cancellable checked periodically, search is abandoned once it reports
+     *                    that results are not needed anymore.
+     * @return ranked items matching query, all items if query is empty,
+     * or null if search was cancelled.
+     */
+    synchronized List<T> search(CharSequence query, Cancellable cancellable) {
+        String normalizedQuery = query == null ? "" : normalize(query.toString()).trim();
+        List<String> queryWords = split(normalizedQuery);
+        if (queryWords.isEmpty()) {
+            mLastQuery = null;
+            return mItems;
+        }
+
+        int resultCount = canRefine(normalizedQuery, queryWords) ?
+                refine(queryWords, cancellable) : lookUp(queryWords, cancellable);
+        if (resultCount < 0) {
+            mLastQuery = null;
+            return null;
+        }
+
+        for (int index = 0; index < resultCount; index++) {
+            int item = mResults[index];
+            int score = mScores[item];
+            if (mLabels[item].startsWith(normalizedQuery)) {
+                score += SCORE_LABEL_PREFIX;
+            }
+
+            long inverseScore = MAX_SCORE - Math.min(score, MAX_SCORE);
+            long length = Math.min(mLabels[item].length(), MAX_LENGTH);
+            mSortKeys[index] = (inverseScore << 40) | (length << 24) | item;
+        }
+
+        Arrays.sort(mSortKeys, 0, resultCount);
+
+        List<T> results = new ArrayList<>(resultCount);
+        for (int index = 0; index < resultCount; index++) {
+            int item = (int) (mSortKeys[index] & MAX_POSITION);
+            mLastResults[index] = item;
+            results.add(mItems.get(item));
+        }
+
+        mLastResultCount = resultCount;
+        mLastQuery = normalizedQuery;
+        return results;
+    }
+
+    private boolean canRefine(String normalizedQuery, List<String> queryWords) {
+        if (mLastQuery == null || !normalizedQuery.startsWith(mLastQuery)) {
+            return false;
+        }
+
+        // looking up the most specific word would touch this many words
+        String lastWord = queryWords.get(queryWords.size() - 1);
+        int wordCount = lowerBound(lastWord + Character.MAX_VALUE) - lowerBound(lastWord);
+        return mLastResultCount < wordCount;
+    }
+
+    /* matches previous results against query, returns number of results or -1 */
+    private int refine(List<String> queryWords, Cancellable cancellable) {
+        int resultCount = 0;
+        for (int index = 0; index < mLastResultCount; index++) {
+            if (isCancelled(index, cancellable)) {
+                return -1;
+            }
+
+            int item = mLastResults[index];
+            int score = score(item, queryWords);
+            if (score >= 0) {
+                mScores[item] = score;
+                mResults[resultCount++] = item;
+            }
+        }
+        return resultCount;
+    }
+
+    /* finds items through sorted words, returns number of results or -1 */
+    private int lookUp(List<String> queryWords, Cancellable cancellable) {
+        // overflow is harmless: generations only have to differ from the previous one
+        int generation = ++mGeneration;
+        int candidateCount = 0;
+
+        int step = 0;
+        for (int queryWord = 0; queryWord < queryWords.size(); queryWord++) {
+            String prefix = queryWords.get(queryWord);
+            for (int index = lowerBound(prefix);
+                 index < mWords.length && mWords[index].startsWith(prefix); index++) {
+                if (isCancelled(step++, cancellable)) {
+                    return -1;
+                }
+
+                int item = mWordItems[index];
+                int score = score(mWordPositions[index], mWords[index], prefix);
+
+                if (queryWord == 0 && mGenerations[item] != generation) {
+                    mGenerations[item] = generation;
+                    mMatched[item] = 0;
+                    mScores[item] = 0;
+                    mCandidates[candidateCount++] = item;
+                }
+                if (mGenerations[item] != generation) {
+                    continue;
+                }
+
+                /* item has to match all previous query words; each query
+                word contributes score of its best match within label */
+                if (mMatched[item] == queryWord) {
+                    mMatched[item] = queryWord + 1;
+                    mWordScores[item] = score;
+                    mScores[item] += score;
+                } else if (mMatched[item] == queryWord + 1 && score > mWordScores[item]) {
+                    mScores[item] += score - mWordScores[item];
+                    mWordScores[item] = score;
+                }
+            }
+        }
+
+        int resultCount = 0;
+        for (int candidate = 0; candidate < candidateCount; candidate++) {
+            int item = mCandidates[candidate];
+            if (mMatched[item] == queryWords.size()) {
+                mResults[resultCount++] = item;
+            }
+        }
+        return resultCount;
+    }
+
+    /* returns score of item or -1 if it does not match query */
+    private int score(int item, List<String> queryWords) {
+        String[] words = mItemWords[item];
+        int score = 0;
+        for (int queryWord = 0; queryWord < queryWords.size(); queryWord++) {
+            String prefix = queryWords.get(queryWord);
+            int bestScore = -1;
+            for (int position = 0; position < words.length; position++) {
+                if (words[position].startsWith(prefix)) {
+                    bestScore = Math.max(bestScore, score(position, words[position], prefix));
+                }
+            }
+
+            if (bestScore < 0) {
+                return -1;
+            }
+            score += bestScore;
+        }
+        return score;
+    }
+
+    private static int score(int position, String word, String prefix) {
+        return (position == 0 ? SCORE_FIRST_WORD : 0) +
+                (word.length() == prefix.length() ? SCORE_WHOLE_WORD : 0);
+    }
+
+    private static boolean isCancelled(int step, Cancellable cancellable) {
+        return (step & CANCELLATION_CHECK_MASK) == 0 && cancellable.isCancelled();
+    }
+
+    /* index of the first word which is not less than prefix */
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = mWords.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mWords[middle].compareTo(prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static String normalize(String label) {
+        return label == null ? "" : label.toLowerCase();
+    }
+
+    /* words are separated by anything what is neither letter nor digit */
+    private static List<String> split(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int index = 0; index <= text.length(); index++) {
+            boolean isWordChar = index < text.length() &&
+                    Character.isLetterOrDigit(text.charAt(index));
+            if (isWordChar && start < 0) {
+                start = index;
+            } else if (!isWordChar && start >= 0) {
+                words.add(text.substring(start, index));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    interface Cancellable {
+        boolean isCancelled();
+    }
+}
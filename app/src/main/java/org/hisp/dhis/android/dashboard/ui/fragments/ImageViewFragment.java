@@ -28,39 +28,117 @@
 
 package org.hisp.dhis.android.dashboard.ui.fragments;
 
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.annotation.Nullable;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.FrameLayout;
 import android.widget.ImageView;
 
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.NetworkPolicy;
+
 import org.hisp.dhis.android.dashboard.R;
+import org.hisp.dhis.android.dashboard.job.Job;
+import org.hisp.dhis.android.dashboard.job.JobExecutor;
+import org.hisp.dhis.android.dashboard.utils.ImageRequestPlanner;
 import org.hisp.dhis.android.dashboard.utils.PicassoProvider;
+import org.joda.time.DateTime;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.locks.ReentrantLock;
 
+import butterknife.Bind;
+import butterknife.ButterKnife;
 import uk.co.senab.photoview.PhotoViewAttacher;
 
 import static org.hisp.dhis.android.sdk.models.utils.Preconditions.isNull;
 
-public class ImageViewFragment extends BaseFragment {
-    private static final String IMAGE_URL = "arg:imageUrl";
+/**
+ * Shows chart or map image which can be zoomed. Image is loaded progressively:
+ * 1) Thumbnail which is already cached for dashboard grid is shown immediately.
+ * 2) Image which fits the screen is loaded on top of it.
+ * 3) When user zooms in, larger image is downloaded and only the part of it which
+ * is visible on screen is decoded, so the whole image is never kept in memory.
+ */
+public class ImageViewFragment extends BaseFragment implements PhotoViewAttacher.OnMatrixChangedListener {
+    private static final String RESOURCE = "arg:resource";
+    private static final String UID = "arg:uid";
+    private static final String LAST_UPDATED = "arg:lastUpdated";
+
+    private static final String DETAIL_IMAGES_DIR = "images-detail";
+
+    /* time which has to pass after last zoom or pan before detail is decoded */
+    private static final long DETAIL_UPDATE_DELAY = 200;
+
+    /* detail is shown only if image is magnified more than this */
+    private static final float DETAIL_MIN_MAGNIFICATION = 1.25f;
+
+    /* part of memory class which decoded detail can occupy */
+    private static final int DETAIL_MEMORY_FRACTION = 8;
+    private static final int BYTES_PER_PIXEL = 4;
 
+    @Bind(R.id.image_view_content)
     ImageView mImageView;
+
+    @Bind(R.id.image_view_detail)
+    ImageView mDetailView;
+
     PhotoViewAttacher mAttacher;
 
-    public static ImageViewFragment newInstance(String imageUrl) {
-        isNull(imageUrl, "Image URL must not be null");
+    Handler mHandler;
+    Runnable mUpdateDetail;
+    ImageRequestPlanner mImageRequestPlanner;
+
+    /* region decoder for the largest image downloaded so far and its width */
+    DetailDecoder mDecoder;
+    int mDecoderWidth;
+    int mDownloadingWidth;
+
+    /* incremented on each zoom or pan, in order to drop outdated details */
+    int mMatrixVersion;
+
+    public static ImageViewFragment newInstance(String resource, String uid, DateTime lastUpdated) {
+        isNull(resource, "Resource must not be null");
+        isNull(uid, "Image uid must not be null");
 
         Bundle arguments = new Bundle();
-        arguments.putString(IMAGE_URL, imageUrl);
+        arguments.putString(RESOURCE, resource);
+        arguments.putString(UID, uid);
+        arguments.putLong(LAST_UPDATED, lastUpdated == null ? -1 : lastUpdated.getMillis());
 
         ImageViewFragment fragment = new ImageViewFragment();
         fragment.setArguments(arguments);
         return fragment;
     }
 
-    private String getImageUrl() {
-        return getArguments().getString(IMAGE_URL);
+    private String getResource() {
+        return getArguments().getString(RESOURCE);
+    }
+
+    private String getUid() {
+        return getArguments().getString(UID);
+    }
+
+    private DateTime getLastUpdated() {
+        long lastUpdated = getArguments().getLong(LAST_UPDATED, -1);
+        return lastUpdated < 0 ? null : new DateTime(lastUpdated);
     }
 
     @Nullable @Override
@@ -70,14 +148,438 @@ public class ImageViewFragment extends BaseFragment {
 
     @Override
     public void onViewCreated(View view, @Nullable Bundle savedInstanceState) {
-        mImageView = (ImageView) view;
+        ButterKnife.bind(this, view);
 
         mAttacher = new PhotoViewAttacher(mImageView);
+        mAttacher.setOnMatrixChangeListener(this);
         mAttacher.update();
 
+        mHandler = new Handler();
+        mUpdateDetail = new Runnable() {
+            @Override
+            public void run() {
+                updateDetail();
+            }
+        };
+        mImageRequestPlanner = new ImageRequestPlanner(getActivity(), 1);
+
+        loadThumbnail();
+    }
+
+    @Override
+    public void onDestroyView() {
+        JobExecutor.cancelJob(DownloadImageJob.JOB_ID);
+        JobExecutor.cancelJob(DecodeDetailJob.JOB_ID);
+        mHandler.removeCallbacks(mUpdateDetail);
+
         PicassoProvider.getInstance(getActivity().getApplicationContext())
-                .load(getImageUrl())
+                .cancelRequest(mImageView);
+        mAttacher.cleanup();
+        mDetailView.setImageBitmap(null);
+
+        if (mDecoder != null) {
+            mDecoder.recycle();
+            mDecoder = null;
+        }
+
+        ButterKnife.unbind(this);
+        super.onDestroyView();
+    }
+
+    @Override
+    public void onMatrixChanged(RectF rect) {
+        mMatrixVersion++;
+
+        // detail was decoded for previous position of image
+        mDetailView.setVisibility(View.GONE);
+        mHandler.removeCallbacks(mUpdateDetail);
+        mHandler.postDelayed(mUpdateDetail, DETAIL_UPDATE_DELAY);
+    }
+
+    /* grid image was loaded for dashboard already, so most likely it is in cache */
+    private void loadThumbnail() {
+        Context context = getActivity().getApplicationContext();
+        String thumbnailUrl = new ImageRequestPlanner(context,
+                getResources().getInteger(R.integer.column_nums))
+                .buildImageUrl(getResource(), getUid(), getLastUpdated(), 1);
+
+        PicassoProvider.getInstance(context)
+                .load(thumbnailUrl)
+                .networkPolicy(NetworkPolicy.OFFLINE)
                 .placeholder(R.mipmap.ic_stub_dashboard_item)
-                .into(mImageView);
+                .noFade()
+                .into(mImageView, new Callback() {
+                    @Override
+                    public void onSuccess() {
+                        mAttacher.update();
+                        loadFullScreenImage();
+                    }
+
+                    @Override
+                    public void onError() {
+                        loadFullScreenImage();
+                    }
+                });
+    }
+
+    private void loadFullScreenImage() {
+        if (mImageView == null) {
+            return;
+        }
+
+        String imageUrl = mImageRequestPlanner.buildFullScreenImageUrl(
+                getResource(), getUid(), getLastUpdated());
+        PicassoProvider.getInstance(getActivity().getApplicationContext())
+                .load(imageUrl)
+                .placeholder(mImageView.getDrawable())
+                .noFade()
+                .into(mImageView, new Callback() {
+                    @Override
+                    public void onSuccess() {
+                        mAttacher.update();
+                    }
+
+                    @Override
+                    public void onError() {
+                        // thumbnail stays on screen
+                    }
+                });
+    }
+
+    private void updateDetail() {
+        RectF displayRect = mAttacher.getDisplayRect();
+        if (displayRect == null || mImageView.getDrawable() == null) {
+            return;
+        }
+
+        // image on screen is sharp enough
+        float displayedWidth = displayRect.width();
+        if (displayedWidth <= mImageView.getDrawable().getIntrinsicWidth() *
+                DETAIL_MIN_MAGNIFICATION) {
+            return;
+        }
+
+        int requiredWidth = ImageRequestPlanner.getBucketWidth(Math.round(displayedWidth));
+        if (requiredWidth > mDecoderWidth && requiredWidth > mDownloadingWidth) {
+            mDownloadingWidth = requiredWidth;
+
+            String imageUrl = mImageRequestPlanner.buildImageUrlForWidth(
+                    getResource(), getUid(), getLastUpdated(), requiredWidth);
+            // older versions of image are removed by prefix, which ends before width
+            DateTime lastUpdated = getLastUpdated();
+            File imageFile = new File(getDetailImagesDir(getActivity()), getUid() + "_" +
+                    (lastUpdated == null ? 0 : lastUpdated.getMillis()) + "_" +
+                    requiredWidth + ".png");
+
+            JobExecutor.cancelJob(DownloadImageJob.JOB_ID);
+            JobExecutor.enqueueJob(new DownloadImageJob(this,
+                    imageUrl, imageFile, requiredWidth));
+        }
+
+        // meanwhile, showing detail from image we already have
+        if (mDecoder != null) {
+            decodeDetail(displayRect);
+        }
+    }
+
+    private void decodeDetail(RectF displayRect) {
+        Rect visibleRect = new Rect(0, 0, mImageView.getWidth(), mImageView.getHeight());
+        if (!visibleRect.intersect(Math.round(displayRect.left), Math.round(displayRect.top),
+                Math.round(displayRect.right), Math.round(displayRect.bottom))) {
+            return;
+        }
+
+        // mapping visible part of screen to coordinates of image
+        float imageScale = mDecoder.getWidth() / displayRect.width();
+        Rect region = new Rect(
+                Math.round((visibleRect.left - displayRect.left) * imageScale),
+                Math.round((visibleRect.top - displayRect.top) * imageScale),
+                Math.round((visibleRect.right - displayRect.left) * imageScale),
+                Math.round((visibleRect.bottom - displayRect.top) * imageScale));
+        if (!region.intersect(0, 0, mDecoder.getWidth(), mDecoder.getHeight())) {
+            return;
+        }
+
+        // there is no point to decode more pixels than screen can show
+        // or more than memory budget allows
+        long memoryBudget = getDetailMemoryBudget(getActivity());
+        int sampleSize = 1;
+        while (region.width() / (sampleSize * 2) >= visibleRect.width() ||
+                (long) (region.width() / sampleSize) * (region.height() / sampleSize) *
+                        BYTES_PER_PIXEL > memoryBudget) {
+            sampleSize *= 2;
+        }
+
+        JobExecutor.cancelJob(DecodeDetailJob.JOB_ID);
+        JobExecutor.enqueueJob(new DecodeDetailJob(this, mDecoder,
+                region, sampleSize, visibleRect, mMatrixVersion));
+    }
+
+    void onImageDownloaded(DetailDecoder decoder, int width) {
+        if (width == mDownloadingWidth) {
+            mDownloadingWidth = 0;
+        }
+
+        if (decoder == null) {
+            return;
+        }
+
+        if (width <= mDecoderWidth) {
+            decoder.recycle();
+            return;
+        }
+
+        if (mDecoder != null) {
+            mDecoder.recycle();
+        }
+        mDecoder = decoder;
+        mDecoderWidth = width;
+        updateDetail();
+    }
+
+    void onDetailDecoded(Bitmap detail, Rect visibleRect, int matrixVersion) {
+        if (detail == null || matrixVersion != mMatrixVersion) {
+            return;
+        }
+
+        FrameLayout.LayoutParams layoutParams = (FrameLayout.LayoutParams)
+                mDetailView.getLayoutParams();
+        layoutParams.leftMargin = visibleRect.left;
+        layoutParams.topMargin = visibleRect.top;
+        layoutParams.width = visibleRect.width();
+        layoutParams.height = visibleRect.height();
+
+        mDetailView.setLayoutParams(layoutParams);
+        mDetailView.setImageBitmap(detail);
+        mDetailView.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Region decoder which can be recycled from main thread while detail is decoded
+     * on background thread. Main thread never waits for decoding: if decoder is busy,
+     * it is recycled by the decoding thread as soon as the current region is decoded.
+     */
+    static final class DetailDecoder {
+        final BitmapRegionDecoder mDecoder;
+        final ReentrantLock mLock;
+        volatile boolean mIsRecyclePending;
+
+        DetailDecoder(BitmapRegionDecoder decoder) {
+            mDecoder = decoder;
+            mLock = new ReentrantLock();
+        }
+
+        int getWidth() {
+            return mDecoder.getWidth();
+        }
+
+        int getHeight() {
+            return mDecoder.getHeight();
+        }
+
+        /* returns null if decoder has been recycled meanwhile */
+        Bitmap decodeRegion(Rect region, BitmapFactory.Options options) {
+            Bitmap bitmap = null;
+            mLock.lock();
+            try {
+                if (!mIsRecyclePending && !mDecoder.isRecycled()) {
+                    bitmap = mDecoder.decodeRegion(region, options);
+                }
+            } finally {
+                mLock.unlock();
+            }
+
+            // recycle could have been requested while region was decoded
+            recycleIfPending();
+            return bitmap;
+        }
+
+        void recycle() {
+            mIsRecyclePending = true;
+            recycleIfPending();
+        }
+
+        private void recycleIfPending() {
+            if (mIsRecyclePending && mLock.tryLock()) {
+                try {
+                    if (!mDecoder.isRecycled()) {
+                        mDecoder.recycle();
+                    }
+                } finally {
+                    mLock.unlock();
+                }
+            }
+        }
+    }
+
+    private static File getDetailImagesDir(Context context) {
+        return new File(context.getCacheDir(), DETAIL_IMAGES_DIR);
+    }
+
+    private static long getDetailMemoryBudget(Context context) {
+        ActivityManager activityManager = (ActivityManager)
+                context.getSystemService(Context.ACTIVITY_SERVICE);
+        return activityManager.getMemoryClass() * 1024L * 1024L / DETAIL_MEMORY_FRACTION;
+    }
+
+    /* downloads image to file, so it can be decoded by parts */
+    static class DownloadImageJob extends Job<DetailDecoder> {
+        static final int JOB_ID = 5283741;
+        static final int BUFFER_SIZE = 8 * 1024;
+
+        final WeakReference<ImageViewFragment> mFragmentRef;
+        final Context mContext;
+        final String mImageUrl;
+        final File mImageFile;
+        final int mWidth;
+
+        /* kept in order to recycle decoder if job is cancelled after it is created */
+        volatile DetailDecoder mDecoder;
+
+        public DownloadImageJob(ImageViewFragment fragment, String imageUrl,
+                                File imageFile, int width) {
+            super(JOB_ID, Priority.HIGH);
+
+            mFragmentRef = new WeakReference<>(fragment);
+            mContext = fragment.getActivity().getApplicationContext();
+            mImageUrl = imageUrl;
+            mImageFile = imageFile;
+            mWidth = width;
+        }
+
+        @Override
+        public DetailDecoder inBackground() {
+            try {
+                if (!mImageFile.exists()) {
+                    download();
+                }
+
+                if (isCancelled()) {
+                    return null;
+                }
+
+                mDecoder = new DetailDecoder(BitmapRegionDecoder
+                        .newInstance(mImageFile.getAbsolutePath(), false));
+                return mDecoder;
+            } catch (IOException e) {
+                e.printStackTrace();
+
+                // partially written file is of no use
+                mImageFile.delete();
+            }
+            return null;
+        }
+
+        private void download() throws IOException {
+            Request request = new Request.Builder().url(mImageUrl).build();
+            Response response = PicassoProvider.getOkHttpClient(mContext)
+                    .newCall(request).execute();
+            if (!response.isSuccessful()) {
+                response.body().close();
+                throw new IOException("Unexpected response code: " + response.code());
+            }
+
+            prepareDirectory();
+            File tempFile = new File(mImageFile.getPath() + ".tmp");
+            InputStream in = response.body().byteStream();
+            try {
+                OutputStream out = new FileOutputStream(tempFile);
+                try {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int count;
+                    while (!isCancelled() && (count = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, count);
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+
+            if (isCancelled() || !tempFile.renameTo(mImageFile)) {
+                tempFile.delete();
+            }
+        }
+
+        /* only images of element which is currently shown are kept */
+        private void prepareDirectory() {
+            File directory = mImageFile.getParentFile();
+            if (!directory.exists()) {
+                directory.mkdirs();
+                return;
+            }
+
+            String name = mImageFile.getName();
+            String prefix = name.substring(0, name.lastIndexOf('_') + 1);
+
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (!file.getName().startsWith(prefix)) {
+                        file.delete();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onFinish(DetailDecoder decoder) {
+            if (mFragmentRef.get() != null && mFragmentRef.get().mImageView != null) {
+                mFragmentRef.get().onImageDownloaded(decoder, mWidth);
+            } else if (decoder != null) {
+                decoder.recycle();
+            }
+        }
+
+        @Override
+        public void onCancel() {
+            if (mDecoder != null) {
+                mDecoder.recycle();
+            }
+        }
+    }
+
+    static class DecodeDetailJob extends Job<Bitmap> {
+        static final int JOB_ID = 5283742;
+
+        final WeakReference<ImageViewFragment> mFragmentRef;
+        final DetailDecoder mDecoder;
+        final Rect mRegion;
+        final int mSampleSize;
+        final Rect mVisibleRect;
+        final int mMatrixVersion;
+
+        public DecodeDetailJob(ImageViewFragment fragment, DetailDecoder decoder,
+                               Rect region, int sampleSize, Rect visibleRect, int matrixVersion) {
+            super(JOB_ID, Priority.HIGH);
+
+            mFragmentRef = new WeakReference<>(fragment);
+            mDecoder = decoder;
+            mRegion = region;
+            mSampleSize = sampleSize;
+            mVisibleRect = visibleRect;
+            mMatrixVersion = matrixVersion;
+        }
+
+        @Override
+        public Bitmap inBackground() {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = mSampleSize;
+
+            if (isCancelled()) {
+                return null;
+            }
+
+            // decoder could have been replaced by a larger one and recycled
+            return mDecoder.decodeRegion(mRegion, options);
+        }
+
+        @Override
+        public void onFinish(Bitmap detail) {
+            if (mFragmentRef.get() != null && mFragmentRef.get().mImageView != null) {
+                mFragmentRef.get().onDetailDecoded(detail, mVisibleRect, mMatrixVersion);
+            }
+        }
     }
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.ui.fragments;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.JsonReader;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.hisp.dhis.android.dashboard.R;
+import org.hisp.dhis.android.dashboard.job.Job;
+import org.hisp.dhis.android.dashboard.job.JobExecutor;
+import org.hisp.dhis.android.dashboard.ui.models.ReportTable;
+import org.hisp.dhis.android.dashboard.ui.views.ReportTableView;
+import org.hisp.dhis.android.dashboard.utils.ReportTableCache;
+import org.hisp.dhis.android.sdk.core.network.APIException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.lang.ref.WeakReference;
+
+import butterknife.Bind;
+import butterknife.ButterKnife;
+
+/**
+ * Shows report table natively, using grid data instead of html rendered by server.
+ * If grid can't be retrieved, falls back to {@link WebViewFragment}.
+ */
+public class ReportTableFragment extends BaseFragment {
+    private static final String DASHBOARD_ELEMENT_ID = "arg:dashboardElementId";
+
+    @Bind(R.id.report_table_view)
+    ReportTableView mReportTableView;
+
+    @Bind(R.id.container_layout_progress_bar)
+    View mProgressBarContainer;
+
+    public static ReportTableFragment newInstance(String id) {
+        Bundle args = new Bundle();
+        args.putString(DASHBOARD_ELEMENT_ID, id);
+
+        ReportTableFragment fragment = new ReportTableFragment();
+        fragment.setArguments(args);
+
+        return fragment;
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        return inflater.inflate(R.layout.fragment_report_table, container, false);
+    }
+
+    @Override
+    public void onViewCreated(View view, Bundle savedInstanceState) {
+        ButterKnife.bind(this, view);
+
+        JobExecutor.enqueueJob(new GetReportTableGridJob(this, getActivity(),
+                getArguments().getString(DASHBOARD_ELEMENT_ID)));
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+
+        JobExecutor.cancelJob(GetReportTableGridJob.JOB_ID);
+        ButterKnife.unbind(this);
+    }
+
+    public void onDataDownloaded(MeasuredReportTable result) {
+        if (!isAdded() || mReportTableView == null) {
+            return;
+        }
+
+        if (result != null) {
+            mProgressBarContainer.setVisibility(View.GONE);
+            mReportTableView.setReportTable(result.mReportTable, result.mColumnLefts);
+            return;
+        }
+
+        // html version can still be shown from cache or offline pack
+        getFragmentManager().beginTransaction()
+                .replace(getId(), WebViewFragment.newInstance(
+                        getArguments().getString(DASHBOARD_ELEMENT_ID)))
+                .commitAllowingStateLoss();
+    }
+
+    /* table together with widths of its columns, both are prepared in background */
+    static class MeasuredReportTable {
+        final ReportTable mReportTable;
+        final int[] mColumnLefts;
+
+        MeasuredReportTable(ReportTable reportTable, int[] columnLefts) {
+            mReportTable = reportTable;
+            mColumnLefts = columnLefts;
+        }
+    }
+
+    static class GetReportTableGridJob extends Job<MeasuredReportTable> {
+        static final int JOB_ID = 4573453;
+        static final int BUFFER_SIZE = 8 * 1024;
+
+        final WeakReference<ReportTableFragment> mFragmentRef;
+        final Context mContext;
+        final String mDashboardElementId;
+
+        public GetReportTableGridJob(ReportTableFragment fragment, Context context,
+                                     String dashboardElementId) {
+            super(JOB_ID, Priority.HIGH);
+
+            mFragmentRef = new WeakReference<>(fragment);
+            mContext = context.getApplicationContext();
+            mDashboardElementId = dashboardElementId;
+        }
+
+        /* returns null if grid can't be retrieved */
+        @Override
+        public MeasuredReportTable inBackground() {
+            ReportTableCache cache = ReportTableCache.getInstance();
+            File grid;
+            try {
+                grid = cache.get(mDashboardElementId, ReportTableCache.JSON);
+            } catch (IOException | APIException e) {
+                e.printStackTrace();
+                grid = cache.getCached(mDashboardElementId, ReportTableCache.JSON);
+            }
+
+            if (grid == null) {
+                return null;
+            }
+
+            ReportTable reportTable;
+            JsonReader reader;
+            try {
+                reader = new JsonReader(new CancellableReader(new BufferedReader(
+                        new InputStreamReader(new FileInputStream(grid), "UTF-8"),
+                        BUFFER_SIZE)));
+            } catch (IOException exception) {
+                exception.printStackTrace();
+                return null;
+            }
+
+            try {
+                reportTable = ReportTable.fromJson(reader);
+            } catch (IOException exception) {
+                exception.printStackTrace();
+                return null;
+            } finally {
+                try {
+                    reader.close();
+                } catch (IOException exception) {
+                    exception.printStackTrace();
+                }
+            }
+
+            // text of wide tables takes a while to measure, so it is never done on main thread
+            return new MeasuredReportTable(reportTable,
+                    ReportTableView.measureColumns(mContext, reportTable));
+        }
+
+        @Override
+        public void onFinish(MeasuredReportTable result) {
+            if (mFragmentRef.get() != null) {
+                mFragmentRef.get().onDataDownloaded(result);
+            }
+        }
+
+        /* stops parsing as soon as job is cancelled */
+        private class CancellableReader extends FilterReader {
+
+            CancellableReader(Reader reader) {
+                super(reader);
+            }
+
+            @Override
+            public int read(char[] buffer, int offset, int count) throws IOException {
+                if (isCancelled()) {
+                    throw new InterruptedIOException("Job was cancelled");
+                }
+                return super.read(buffer, offset, count);
+            }
+        }
+    }
+}
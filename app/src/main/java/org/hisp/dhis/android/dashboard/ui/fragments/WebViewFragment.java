@@ -28,6 +28,7 @@
 
 package org.hisp.dhis.android.dashboard.ui.fragments;
 
+import android.net.Uri;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -38,18 +39,17 @@ import org.hisp.dhis.android.dashboard.DhisApplication;
 import org.hisp.dhis.android.dashboard.R;
 import org.hisp.dhis.android.dashboard.job.Job;
 import org.hisp.dhis.android.dashboard.job.JobExecutor;
-import org.hisp.dhis.android.sdk.core.api.Dhis2;
+import org.hisp.dhis.android.dashboard.sync.OfflinePack;
+import org.hisp.dhis.android.dashboard.utils.ReportTableCache;
 import org.hisp.dhis.android.sdk.core.network.APIException;
 import org.hisp.dhis.android.sdk.core.persistence.models.common.meta.ResponseHolder;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.lang.ref.WeakReference;
 
 import butterknife.Bind;
 import butterknife.ButterKnife;
-import retrofit.mime.TypedInput;
 
 import static android.text.TextUtils.isEmpty;
 
@@ -62,6 +62,9 @@ public class WebViewFragment extends BaseFragment {
     @Bind(R.id.container_layout_progress_bar)
     View mProgressBarContainer;
 
+    @Bind(R.id.text_view_empty)
+    View mEmptyView;
+
     public static WebViewFragment newInstance(String id) {
         Bundle args = new Bundle();
         args.putString(DASHBOARD_ELEMENT_ID, id);
@@ -81,6 +84,7 @@ public class WebViewFragment extends BaseFragment {
         ButterKnife.bind(this, view);
 
         mWebView.getSettings().setBuiltInZoomControls(true);
+        mWebView.getSettings().setAllowFileAccess(true);
         if (getArguments() != null && !isEmpty(getArguments()
                 .getString(DASHBOARD_ELEMENT_ID))) {
             JobExecutor.enqueueJob(new GetReportTableJob(this, getArguments()
@@ -88,72 +92,80 @@ public class WebViewFragment extends BaseFragment {
         }
     }
 
-    public void onDataDownloaded(ResponseHolder<String> data) {
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+
+        // nobody is going to look at report table anymore
+        JobExecutor.cancelJob(GetReportTableJob.JOB_ID);
+    }
+
+    public void onDataDownloaded(ResponseHolder<File> result) {
         mProgressBarContainer.setVisibility(View.GONE);
 
-        if (data.getApiException() == null) {
-            mWebView.loadData(data.getItem(), "text/html", "UTF-8");
-        } else {
-            if (isAdded()) {
-                ((DhisApplication) (getActivity().getApplication()))
-                        .showApiExceptionMessage(data.getApiException());
-            }
+        File reportTable = result.getItem();
+        if (reportTable != null) {
+            // WebView reads file itself, so report table never ends up in one string
+            mWebView.loadUrl(Uri.fromFile(reportTable).toString());
+            return;
+        }
+
+        // blank WebView would look as if report table was still loading
+        mWebView.setVisibility(View.GONE);
+        mEmptyView.setVisibility(View.VISIBLE);
+        if (isAdded() && result.getApiException() != null) {
+            ((DhisApplication) getActivity().getApplication())
+                    .showApiExceptionMessage(result.getApiException());
         }
     }
 
-    static class GetReportTableJob extends Job<ResponseHolder<String>> {
+    /**
+     * Retrieves html of report table through {@link ReportTableCache}, so it
+     * is downloaded only if it has changed since the last time.
+     */
+    static class GetReportTableJob extends Job<ResponseHolder<File>> {
         static final int JOB_ID = 4573452;
 
         final WeakReference<WebViewFragment> mFragmentRef;
         final String mDashboardElementId;
 
         public GetReportTableJob(WebViewFragment fragment, String dashboardElementId) {
-            super(JOB_ID);
+            super(JOB_ID, Priority.HIGH);
 
             mFragmentRef = new WeakReference<>(fragment);
             mDashboardElementId = dashboardElementId;
         }
 
-        static String readInputStream(TypedInput in) {
-            StringBuilder builder = new StringBuilder();
+        /* holds no file if report table is neither available on server nor stored
+        locally, the reason why server has failed is kept in order to tell it to user */
+        @Override
+        public ResponseHolder<File> inBackground() {
+            ResponseHolder<File> holder = new ResponseHolder<>();
             try {
-                BufferedReader bufferedStream
-                        = new BufferedReader(new InputStreamReader(in.in()));
-                try {
-                    String line;
-                    while ((line = bufferedStream.readLine()) != null) {
-                        builder.append(line);
-                        builder.append('\n');
-                    }
-                    return builder.toString();
-                } finally {
-                    bufferedStream.close();
-                }
+                holder.setItem(ReportTableCache.getInstance()
+                        .get(mDashboardElementId, ReportTableCache.HTML));
+                return holder;
+            } catch (APIException e) {
+                holder.setApiException(e);
             } catch (IOException e) {
                 e.printStackTrace();
             }
-            return builder.toString();
-        }
 
-        @Override
-        public ResponseHolder<String> inBackground() {
-            ResponseHolder<String> responseHolder = new ResponseHolder<>();
-
-            try {
-                responseHolder.setItem(readInputStream(Dhis2.getServiceApi()
-                        .getReportTableData(mDashboardElementId).getBody()));
-            } catch (APIException exception) {
-                responseHolder.setApiException(exception);
+            // any previous version is better than nothing
+            File reportTable = ReportTableCache.getInstance()
+                    .getCached(mDashboardElementId, ReportTableCache.HTML);
+            if (reportTable == null) {
+                reportTable = OfflinePack.getInstance().getReportTable(mDashboardElementId);
             }
-
-            return responseHolder;
+            holder.setItem(reportTable);
+            return holder;
         }
 
         @Override
-        public void onFinish(ResponseHolder<String> result) {
+        public void onFinish(ResponseHolder<File> result) {
             if (mFragmentRef.get() != null) {
                 mFragmentRef.get().onDataDownloaded(result);
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -141,4 +141,12 @@ public class DashboardEmptyFragment extends BaseFragment implements View.OnClick
             mProgressBar.setVisibility(View.INVISIBLE);
         }
     }
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void onJobCancelled(NetworkJob.NetworkJobCancelled event) {
+        if (event.getResourceType() == ResourceType.DASHBOARDS) {
+            mProgressBar.setVisibility(View.INVISIBLE);
+        }
+    }
 }
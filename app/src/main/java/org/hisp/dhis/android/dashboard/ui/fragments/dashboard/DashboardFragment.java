@@ -31,6 +31,7 @@ package org.hisp.dhis.android.dashboard.ui.fragments.dashboard;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Parcelable;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.Loader;
 import android.support.v7.widget.DefaultItemAnimator;
@@ -45,15 +46,18 @@ import org.hisp.dhis.android.dashboard.DhisService;
 import org.hisp.dhis.android.dashboard.R;
 import org.hisp.dhis.android.dashboard.ui.activities.DashboardElementDetailActivity;
 import org.hisp.dhis.android.dashboard.ui.adapters.DashboardItemAdapter;
-import org.hisp.dhis.android.dashboard.ui.events.UiEvent;
+import org.hisp.dhis.android.dashboard.ui.adapters.DashboardItemViewPool;
 import org.hisp.dhis.android.dashboard.ui.fragments.BaseFragment;
 import org.hisp.dhis.android.dashboard.ui.fragments.interpretation.InterpretationCreateFragment;
+import org.hisp.dhis.android.dashboard.ui.loaders.SyncAwareDbLoader;
+import org.hisp.dhis.android.dashboard.ui.models.DashboardItemModel;
 import org.hisp.dhis.android.dashboard.ui.views.GridDividerDecoration;
-import org.hisp.dhis.android.dashboard.utils.EventBusProvider;
+import org.hisp.dhis.android.dashboard.ui.views.ImagePrefetcher;
+import org.hisp.dhis.android.dashboard.utils.PicassoProvider;
 import org.hisp.dhis.android.sdk.core.api.Dhis2;
-import org.hisp.dhis.android.sdk.core.persistence.loaders.DbLoader;
 import org.hisp.dhis.android.sdk.core.persistence.loaders.Query;
 import org.hisp.dhis.android.sdk.core.persistence.loaders.TrackedTable;
+import org.hisp.dhis.android.sdk.core.persistence.preferences.ResourceType;
 import org.hisp.dhis.android.sdk.models.common.Access;
 import org.hisp.dhis.android.sdk.models.dashboard.Dashboard;
 import org.hisp.dhis.android.sdk.models.dashboard.DashboardElement;
@@ -65,7 +69,7 @@ import java.util.Arrays;
 import java.util.List;
 
 public class DashboardFragment extends BaseFragment
-        implements LoaderManager.LoaderCallbacks<List<DashboardItem>>, DashboardItemAdapter.OnItemClickListener {
+        implements LoaderManager.LoaderCallbacks<List<DashboardItemModel>>, DashboardItemAdapter.OnItemClickListener {
     private static final int LOADER_ID = 74734523;
     private static final String DASHBOARD_ID = "arg:dashboardId";
     private static final String DELETE = "arg:delete";
@@ -74,11 +78,28 @@ public class DashboardFragment extends BaseFragment
     private static final String WRITE = "arg:write";
     private static final String MANAGE = "arg:manage";
     private static final String EXTERNALIZE = "arg:externalize";
+    private static final String SCREEN_WIDTH = "state:screenWidthDp";
+    private static final String SPAN_COUNT = "state:spanCount";
+
+    /* number of rows of images which are loaded ahead of scrolling */
+    private static final int PREFETCH_ROWS = 2;
 
     RecyclerView mRecyclerView;
 
     DashboardItemAdapter mAdapter;
 
+    ImagePrefetcher mImagePrefetcher;
+
+    /* Loaders of pages which are not visible to user are paused, so that changes made
+    to other dashboards (for example during sync) do not re-query every page kept by
+    ViewPager. Data loaded before stays in adapter and it is refreshed once the page
+    becomes visible again. */
+    boolean mIsLoaderPaused;
+
+    /* scroll state of the page which was removed by adapter
+    earlier, applied once the view of this fragment is created */
+    Parcelable mPendingScrollState;
+
     public static DashboardFragment newInstance(Dashboard dashboard) {
         DashboardFragment fragment = new DashboardFragment();
         Access access = dashboard.getAccess();
@@ -121,7 +142,7 @@ public class DashboardFragment extends BaseFragment
         final int spanCount = getResources().getInteger(R.integer.column_nums);
 
         mAdapter = new DashboardItemAdapter(getActivity(),
-                getAccessFromBundle(getArguments()), spanCount, this);
+                getAccessFromBundle(getArguments()), this);
 
         GridLayoutManager gridLayoutManager = new GridLayoutManager(getActivity(), spanCount);
         gridLayoutManager.setOrientation(GridLayoutManager.VERTICAL);
@@ -133,21 +154,108 @@ public class DashboardFragment extends BaseFragment
             }
         });
 
+        /* views of page which is removed go back to the pool shared by pages */
+        gridLayoutManager.setRecycleChildrenOnDetach(true);
+
         mRecyclerView.setLayoutManager(gridLayoutManager);
+        if (mPendingScrollState != null && savedInstanceState == null) {
+            gridLayoutManager.onRestoreInstanceState(mPendingScrollState);
+        }
+        mPendingScrollState = null;
         mRecyclerView.setItemAnimator(new DefaultItemAnimator());
         mRecyclerView.addItemDecoration(new GridDividerDecoration(getActivity()
                 .getApplicationContext()));
+        if (getParentFragment() instanceof DashboardViewPagerFragment) {
+            DashboardItemViewPool itemViewPool = ((DashboardViewPagerFragment)
+                    getParentFragment()).getItemViewPool();
+            mRecyclerView.setRecycledViewPool(itemViewPool);
+            itemViewPool.warmUp(mRecyclerView, mAdapter);
+        }
         mRecyclerView.setAdapter(mAdapter);
+
+        mImagePrefetcher = new ImagePrefetcher(getActivity(), gridLayoutManager,
+                PicassoProvider.getInstance(getActivity()), mAdapter,
+                spanCount * PREFETCH_ROWS);
+        mRecyclerView.addOnScrollListener(mImagePrefetcher);
+    }
+
+    @Override
+    public void onDestroyView() {
+        mImagePrefetcher.cancel();
+        PicassoProvider.getInstance(getActivity())
+                .cancelTag(mAdapter.getImageTag());
+
+        // warm-up started by this page must not keep inflating into destroyed RecyclerView
+        if (getParentFragment() instanceof DashboardViewPagerFragment) {
+            ((DashboardViewPagerFragment) getParentFragment())
+                    .getItemViewPool().cancelWarmUp(mRecyclerView);
+        }
+        super.onDestroyView();
+    }
+
+    /**
+     * @return scroll position of the list, or null if fragment has no view.
+     */
+    public Parcelable getScrollState() {
+        if (getView() == null) {
+            return null;
+        }
+        return mRecyclerView.getLayoutManager().onSaveInstanceState();
+    }
+
+    /**
+     * Sets scroll position which will be restored once the view is created.
+     */
+    public void setScrollState(Parcelable scrollState) {
+        mPendingScrollState = scrollState;
+    }
+
+    /**
+     * Warms up image cache for items which are below the ones visible on screen.
+     * Called for dashboards which are next to the one user is looking at.
+     */
+    public void prefetchImages() {
+        if (mImagePrefetcher != null) {
+            mImagePrefetcher.prefetch();
+        }
     }
 
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
-        getLoaderManager().initLoader(LOADER_ID, getArguments(), this);
+
+        /* loader survives configuration changes, while span sizes and image URLs
+        of its models depend on the window they were built for */
+        if (savedInstanceState != null && (savedInstanceState.getInt(SCREEN_WIDTH) !=
+                getResources().getConfiguration().screenWidthDp ||
+                savedInstanceState.getInt(SPAN_COUNT) !=
+                        getResources().getInteger(R.integer.column_nums))) {
+            getLoaderManager().restartLoader(LOADER_ID, getArguments(), this);
+        } else {
+            getLoaderManager().initLoader(LOADER_ID, getArguments(), this);
+        }
     }
 
     @Override
-    public Loader<List<DashboardItem>> onCreateLoader(int id, Bundle args) {
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(SCREEN_WIDTH, getResources().getConfiguration().screenWidthDp);
+        outState.putInt(SPAN_COUNT, getResources().getInteger(R.integer.column_nums));
+    }
+
+    @Override
+    public void setUserVisibleHint(boolean isVisibleToUser) {
+        super.setUserVisibleHint(isVisibleToUser);
+
+        if (isVisibleToUser) {
+            resumeLoader();
+        } else {
+            pauseLoader();
+        }
+    }
+
+    @Override
+    public Loader<List<DashboardItemModel>> onCreateLoader(int id, Bundle args) {
         if (id == LOADER_ID && isAdded()) {
             /* When two tables are joined sometimes we can get empty rows.
             For example dashboard does not contain any dashboard items.
@@ -157,27 +265,56 @@ public class DashboardFragment extends BaseFragment
             List<TrackedTable> trackedTables = Arrays.asList(
                     new TrackedTable(DashboardItem.class),
                     new TrackedTable(DashboardElement.class));
-            return new DbLoader<>(getActivity().getApplicationContext(),
-                    trackedTables, new ItemsQuery(args.getLong(DASHBOARD_ID)));
+            return new SyncAwareDbLoader<>(getActivity().getApplicationContext(),
+                    trackedTables, new ItemsQuery(args.getLong(DASHBOARD_ID),
+                    new DashboardItemModel.Factory(getActivity(), getAccessFromBundle(args))),
+                    ResourceType.DASHBOARDS);
         }
         return null;
     }
 
     @Override
-    public void onLoadFinished(Loader<List<DashboardItem>> loader,
-                               List<DashboardItem> dashboardItems) {
+    public void onLoadFinished(Loader<List<DashboardItemModel>> loader,
+                               List<DashboardItemModel> dashboardItems) {
         if (loader.getId() == LOADER_ID) {
             mAdapter.swapData(dashboardItems);
+
+            // loader cannot be destroyed from within its callback
+            if (!getUserVisibleHint()) {
+                mRecyclerView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!getUserVisibleHint()) {
+                            pauseLoader();
+                        }
+                    }
+                });
+            }
         }
     }
 
     @Override
-    public void onLoaderReset(Loader<List<DashboardItem>> loader) {
-        if (loader.getId() == LOADER_ID) {
+    public void onLoaderReset(Loader<List<DashboardItemModel>> loader) {
+        if (loader.getId() == LOADER_ID && !mIsLoaderPaused) {
             mAdapter.swapData(null);
         }
     }
 
+    private void pauseLoader() {
+        if (!mIsLoaderPaused && isAdded() &&
+                getLoaderManager().getLoader(LOADER_ID) != null) {
+            mIsLoaderPaused = true;
+            getLoaderManager().destroyLoader(LOADER_ID);
+        }
+    }
+
+    private void resumeLoader() {
+        if (mIsLoaderPaused && isAdded()) {
+            mIsLoaderPaused = false;
+            getLoaderManager().initLoader(LOADER_ID, getArguments(), this);
+        }
+    }
+
     @Override
     public void onContentClick(DashboardElement element) {
         switch (element.getDashboardItem().getType()) {
@@ -201,8 +338,7 @@ public class DashboardFragment extends BaseFragment
     public void onContentDeleteClick(DashboardElement element) {
         if (element != null) {
             Dhis2.dashboardElements().remove(element);
-            DhisService.getInstance().syncDashboards();
-            EventBusProvider.post(new UiEvent(UiEvent.UiEventType.SYNC_DASHBOARDS));
+            DhisService.getInstance().scheduleDashboardsSync();
         }
     }
 
@@ -210,8 +346,7 @@ public class DashboardFragment extends BaseFragment
     public void onItemDeleteClick(DashboardItem item) {
         if (item != null) {
             Dhis2.dashboardItems().remove(item);
-            DhisService.getInstance().syncDashboards();
-            EventBusProvider.post(new UiEvent(UiEvent.UiEventType.SYNC_DASHBOARDS));
+            DhisService.getInstance().scheduleDashboardsSync();
         }
     }
 
@@ -222,32 +357,45 @@ public class DashboardFragment extends BaseFragment
                 .show(getChildFragmentManager());
     }
 
-    private static class ItemsQuery implements Query<List<DashboardItem>> {
+    private static class ItemsQuery implements Query<List<DashboardItemModel>> {
         private final long mDashboardId;
+        private final DashboardItemModel.Factory mModelFactory;
 
-        public ItemsQuery(long dashboardId) {
+        public ItemsQuery(long dashboardId, DashboardItemModel.Factory modelFactory) {
             mDashboardId = dashboardId;
+            mModelFactory = modelFactory;
         }
 
         @Override
-        public List<DashboardItem> query(Context context) {
+        public List<DashboardItemModel> query(Context context) {
             Dashboard dashboard = new Dashboard();
             dashboard.setId(mDashboardId);
 
             List<DashboardItem> dashboardItems = Dhis2.dashboardItems().list(dashboard);
             List<DashboardItem> filteredDashboardItems = new ArrayList<>();
-            if (dashboardItems != null && !dashboardItems.isEmpty()) {
-                for (DashboardItem dashboardItem : dashboardItems) {
-                    if (!DashboardItemContent.TYPE_MESSAGES.equals(dashboardItem.getType()) &&
-                            !DashboardItemContent.TYPE_EVENT_REPORT.equals(dashboardItem.getType())) {
-                        List<DashboardElement> dashboardElements = Dhis2
-                                .dashboardElements().list(dashboardItem);
-                        dashboardItem.setDashboardElements(dashboardElements);
-                        filteredDashboardItems.add(dashboardItem);
-                    }
+            List<DashboardItemModel> models = new ArrayList<>();
+            if (dashboardItems == null || dashboardItems.isEmpty()) {
+                return models;
+            }
+
+            for (DashboardItem dashboardItem : dashboardItems) {
+                if (!DashboardItemContent.TYPE_MESSAGES.equals(dashboardItem.getType()) &&
+                        !DashboardItemContent.TYPE_EVENT_REPORT.equals(dashboardItem.getType())) {
+                    filteredDashboardItems.add(dashboardItem);
+                }
+            }
+
+            /* resolving everything what is shown in item here, off the main thread */
+            for (DashboardItem dashboardItem : filteredDashboardItems) {
+                dashboardItem.setDashboardElements(
+                        Dhis2.dashboardElements().list(dashboardItem));
+
+                DashboardItemModel model = mModelFactory.create(dashboardItem);
+                if (model != null) {
+                    models.add(model);
                 }
             }
-            return filteredDashboardItems;
+            return models;
         }
     }
 }
\ No newline at end of file
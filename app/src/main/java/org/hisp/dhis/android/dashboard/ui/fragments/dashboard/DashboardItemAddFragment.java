@@ -30,6 +30,7 @@ package org.hisp.dhis.android.dashboard.ui.fragments.dashboard;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v4.app.DialogFragment;
 import android.support.v4.app.FragmentManager;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
@@ -41,6 +42,7 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.inputmethod.InputMethodManager;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.EditText;
 import android.widget.ImageView;
@@ -49,11 +51,12 @@ import android.widget.TextView;
 
 import org.hisp.dhis.android.dashboard.DhisService;
 import org.hisp.dhis.android.dashboard.R;
+import org.hisp.dhis.android.dashboard.job.Job;
+import org.hisp.dhis.android.dashboard.job.JobExecutor;
+import org.hisp.dhis.android.dashboard.sync.DashboardDeltaSync;
 import org.hisp.dhis.android.dashboard.ui.adapters.DashboardItemSearchDialogAdapter;
 import org.hisp.dhis.android.dashboard.ui.adapters.DashboardItemSearchDialogAdapter.OptionAdapterValue;
-import org.hisp.dhis.android.dashboard.ui.events.UiEvent;
 import org.hisp.dhis.android.dashboard.ui.fragments.BaseDialogFragment;
-import org.hisp.dhis.android.dashboard.utils.EventBusProvider;
 import org.hisp.dhis.android.sdk.core.api.Dhis2;
 import org.hisp.dhis.android.sdk.core.persistence.loaders.DbLoader;
 import org.hisp.dhis.android.sdk.core.persistence.loaders.Query;
@@ -61,6 +64,8 @@ import org.hisp.dhis.android.sdk.core.persistence.loaders.TrackedTable;
 import org.hisp.dhis.android.sdk.models.dashboard.Dashboard;
 import org.hisp.dhis.android.sdk.models.dashboard.DashboardItemContent;
 
+import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -71,12 +76,24 @@ import butterknife.OnClick;
 import butterknife.OnItemClick;
 import butterknife.OnTextChanged;
 
+/**
+ * Searches for content to add to dashboard. Content is searched on server page by page
+ * as user types, unless catalogue is small enough to be searched locally, or server
+ * can't be reached. In the latter cases, content stored in local database is searched.
+ */
 public class DashboardItemAddFragment extends BaseDialogFragment
-        implements PopupMenu.OnMenuItemClickListener, LoaderCallbacks<List<OptionAdapterValue>> {
+        implements PopupMenu.OnMenuItemClickListener, LoaderCallbacks<List<OptionAdapterValue>>,
+        AbsListView.OnScrollListener {
     private static final String DASHBOARD_ID = "arg:dashboardId";
     private static final String TAG = DashboardItemAddFragment.class.getSimpleName();
     private static final int LOADER_ID = 3451234;
 
+    /* catalogues which are not larger than this are searched locally */
+    private static final int LOCAL_SEARCH_LIMIT = 500;
+
+    /* server is asked only once user stops typing for a moment */
+    private static final long REMOTE_SEARCH_DELAY = 300;
+
     @Bind(R.id.edittext_filter_options)
     EditText mFilter;
 
@@ -94,6 +111,22 @@ public class DashboardItemAddFragment extends BaseDialogFragment
 
     Dashboard mDashboard;
 
+    final Handler mHandler = new Handler();
+    final Runnable mRemoteSearch = new Runnable() {
+        @Override
+        public void run() {
+            searchRemotely(0);
+        }
+    };
+
+    boolean mIsRemoteSearch = true;
+    boolean mIsCatalogueSizeKnown;
+    String mQuery = "";
+    List<OptionAdapterValue> mRemoteValues = new ArrayList<>();
+    int mPage;
+    boolean mHasMorePages;
+    boolean mIsLoadingPage;
+
     public static DashboardItemAddFragment newInstance(long dashboardId) {
         Bundle args = new Bundle();
         args.putLong(DASHBOARD_ID, dashboardId);
@@ -130,6 +163,7 @@ public class DashboardItemAddFragment extends BaseDialogFragment
         mAdapter = new DashboardItemSearchDialogAdapter(
                 LayoutInflater.from(getActivity()));
         mListView.setAdapter(mAdapter);
+        mListView.setOnScrollListener(this);
         mDialogLabel.setText(getString(R.string.add_dashboard_item));
 
         mResourcesMenu = new PopupMenu(getActivity(), mFilterResources);
@@ -147,7 +181,13 @@ public class DashboardItemAddFragment extends BaseDialogFragment
             callback = OnTextChanged.Callback.AFTER_TEXT_CHANGED)
     @SuppressWarnings("unused")
     public void afterTextChanged(Editable s) {
-        mAdapter.getFilter().filter(s.toString());
+        mQuery = s.toString().trim();
+        if (mIsRemoteSearch) {
+            mHandler.removeCallbacks(mRemoteSearch);
+            mHandler.postDelayed(mRemoteSearch, REMOTE_SEARCH_DELAY);
+        } else {
+            mAdapter.filter(mQuery);
+        }
     }
 
     @OnClick({R.id.close_dialog_button, R.id.edittext_filter_resources})
@@ -165,10 +205,15 @@ public class DashboardItemAddFragment extends BaseDialogFragment
     public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
         OptionAdapterValue adapterValue = mAdapter.getItem(position);
         DashboardItemContent resource = Dhis2.dashboardItemContents().get(adapterValue.id);
-        Dhis2.dashboards().addDashboardContent(mDashboard, resource);
+        if (resource != null) {
+            Dhis2.dashboards().addDashboardContent(mDashboard, resource);
+        } else if (adapterValue.type != null) {
+            // content found on server which has not been synced yet
+            // is added by server, item shows up after the sync
+            DashboardDeltaSync.addRemoteContent(mDashboard, adapterValue.type, adapterValue.id);
+        }
 
-        DhisService.getInstance().syncDashboards();
-        EventBusProvider.post(new UiEvent(UiEvent.UiEventType.SYNC_DASHBOARDS));
+        DhisService.getInstance().scheduleDashboardsSync();
 
         dismiss();
     }
@@ -207,14 +252,95 @@ public class DashboardItemAddFragment extends BaseDialogFragment
         }
     }
 
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+        // stub implementation
+    }
+
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem,
+                        int visibleItemCount, int totalItemCount) {
+        // next page is requested before user reaches the end of list
+        if (mIsRemoteSearch && mHasMorePages && !mIsLoadingPage && totalItemCount > 0 &&
+                firstVisibleItem + visibleItemCount >= totalItemCount - visibleItemCount) {
+            searchRemotely(mPage + 1);
+        }
+    }
+
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        mHandler.removeCallbacks(mRemoteSearch);
+        JobExecutor.cancelJob(RemoteSearchJob.JOB_ID);
+        mAdapter.cancelFiltering();
         ButterKnife.unbind(this);
     }
 
     private void queryApiResources() {
+        if (mIsRemoteSearch) {
+            mHandler.removeCallbacks(mRemoteSearch);
+            searchRemotely(0);
+        } else {
+            getLoaderManager().restartLoader(LOADER_ID, getArguments(), this);
+        }
+    }
+
+    private void searchRemotely(int page) {
+        JobExecutor.cancelJob(RemoteSearchJob.JOB_ID);
+
+        List<String> types = getTypesToInclude();
+        if (types.isEmpty()) {
+            mIsLoadingPage = false;
+            mHasMorePages = false;
+            mAdapter.swapData(null);
+            return;
+        }
+
+        mIsLoadingPage = true;
+        JobExecutor.enqueueJob(new RemoteSearchJob(this, mQuery, types, page));
+    }
+
+    void onRemotePageLoaded(String query, List<String> types, int page,
+                            RemoteContentSearch.Page result) {
+        // user has changed query or types meanwhile
+        if (!isAdded() || !mIsRemoteSearch || !query.equals(mQuery) ||
+                !types.equals(getTypesToInclude())) {
+            return;
+        }
+        mIsLoadingPage = false;
+
+        // size of catalogue is judged once, by the first unfiltered page
+        boolean isSmallCatalogue = false;
+        if (result != null && !mIsCatalogueSizeKnown && page == 0 && query.isEmpty()) {
+            mIsCatalogueSizeKnown = true;
+            isSmallCatalogue = result.mTotal <= LOCAL_SEARCH_LIMIT;
+        }
+
+        // failed next page is requested again once user scrolls to the end
+        if (result == null && page > 0) {
+            return;
+        }
+
+        if (result == null || isSmallCatalogue) {
+            switchToLocalSearch();
+            return;
+        }
+
+        if (page == 0) {
+            mRemoteValues = new ArrayList<>();
+        }
+        mRemoteValues.addAll(result.mValues);
+        mPage = page;
+        mHasMorePages = result.mHasMore;
+        mAdapter.swapData(mRemoteValues);
+    }
+
+    /* local search is used until dialog is closed */
+    private void switchToLocalSearch() {
+        mIsRemoteSearch = false;
+        mRemoteValues = new ArrayList<>();
         getLoaderManager().restartLoader(LOADER_ID, getArguments(), this);
+        mAdapter.filter(mQuery);
     }
 
     private List<String> getTypesToInclude() {
@@ -274,4 +400,41 @@ public class DashboardItemAddFragment extends BaseDialogFragment
             return adapterValues;
         }
     }
+
+    static class RemoteSearchJob extends Job<RemoteContentSearch.Page> {
+        static final int JOB_ID = 3451235;
+
+        final WeakReference<DashboardItemAddFragment> mFragmentRef;
+        final String mQuery;
+        final List<String> mTypes;
+        final int mPage;
+
+        public RemoteSearchJob(DashboardItemAddFragment fragment, String query,
+                               List<String> types, int page) {
+            super(JOB_ID, Priority.HIGH);
+
+            mFragmentRef = new WeakReference<>(fragment);
+            mQuery = query;
+            mTypes = types;
+            mPage = page;
+        }
+
+        /* returns null if server can't be reached */
+        @Override
+        public RemoteContentSearch.Page inBackground() {
+            try {
+                return RemoteContentSearch.search(mQuery, mTypes, mPage);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        @Override
+        public void onFinish(RemoteContentSearch.Page result) {
+            if (mFragmentRef.get() != null) {
+                mFragmentRef.get().onRemotePageLoaded(mQuery, mTypes, mPage, result);
+            }
+        }
+    }
 }
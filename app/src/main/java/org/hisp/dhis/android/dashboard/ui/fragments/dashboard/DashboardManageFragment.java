@@ -41,9 +41,7 @@ import android.widget.TextView;
 
 import org.hisp.dhis.android.dashboard.DhisService;
 import org.hisp.dhis.android.dashboard.R;
-import org.hisp.dhis.android.dashboard.ui.events.UiEvent;
 import org.hisp.dhis.android.dashboard.ui.fragments.BaseDialogFragment;
-import org.hisp.dhis.android.dashboard.utils.EventBusProvider;
 import org.hisp.dhis.android.sdk.core.api.Dhis2;
 import org.hisp.dhis.android.sdk.models.dashboard.Dashboard;
 
@@ -135,15 +133,13 @@ public final class DashboardManageFragment extends BaseDialogFragment {
                 mDashboard.setName(mDashboardName.getText().toString());
                 Dhis2.dashboards().update(mDashboard);
 
-                DhisService.getInstance().syncDashboards();
-                EventBusProvider.post(new UiEvent(UiEvent.UiEventType.SYNC_DASHBOARDS));
+                DhisService.getInstance().scheduleDashboardsSync();
                 break;
             }
             case R.id.delete_dashboard_button: {
                 Dhis2.dashboards().remove(mDashboard);
 
-                DhisService.getInstance().syncDashboards();
-                EventBusProvider.post(new UiEvent(UiEvent.UiEventType.SYNC_DASHBOARDS));
+                DhisService.getInstance().scheduleDashboardsSync();
             }
             case R.id.close_dialog_button: {
                 dismiss();
@@ -31,10 +31,12 @@ package org.hisp.dhis.android.dashboard.ui.fragments.dashboard;
 import android.content.Context;
 import android.os.Bundle;
 import android.support.design.widget.TabLayout;
+import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
 import android.support.v4.content.Loader;
 import android.support.v4.view.ViewPager;
 import android.support.v7.widget.Toolbar;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -46,12 +48,14 @@ import com.squareup.otto.Subscribe;
 import org.hisp.dhis.android.dashboard.DhisService;
 import org.hisp.dhis.android.dashboard.R;
 import org.hisp.dhis.android.dashboard.job.NetworkJob;
+import org.hisp.dhis.android.dashboard.sync.OfflinePack;
 import org.hisp.dhis.android.dashboard.ui.adapters.DashboardAdapter;
+import org.hisp.dhis.android.dashboard.ui.adapters.DashboardItemViewPool;
 import org.hisp.dhis.android.dashboard.ui.events.UiEvent;
 import org.hisp.dhis.android.dashboard.ui.fragments.BaseFragment;
+import org.hisp.dhis.android.dashboard.ui.loaders.SyncAwareDbLoader;
 import org.hisp.dhis.android.sdk.core.api.Dhis2;
 import org.hisp.dhis.android.sdk.core.network.SessionManager;
-import org.hisp.dhis.android.sdk.core.persistence.loaders.DbLoader;
 import org.hisp.dhis.android.sdk.core.persistence.loaders.Query;
 import org.hisp.dhis.android.sdk.core.persistence.loaders.TrackedTable;
 import org.hisp.dhis.android.sdk.core.persistence.preferences.ResourceType;
@@ -88,6 +92,9 @@ public class DashboardViewPagerFragment extends BaseFragment
 
     DashboardAdapter mDashboardAdapter;
 
+    /* item views shared by all dashboard pages */
+    DashboardItemViewPool mItemViewPool;
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup parent, Bundle savedInstanceState) {
         return inflater.inflate(R.layout.fragment_dashboards, parent, false);
@@ -97,10 +104,17 @@ public class DashboardViewPagerFragment extends BaseFragment
     public void onViewCreated(View view, Bundle savedInstanceState) {
         ButterKnife.bind(this, view);
 
-        mDashboardAdapter = new DashboardAdapter(getChildFragmentManager());
+        mItemViewPool = new DashboardItemViewPool(
+                getResources().getInteger(R.integer.column_nums));
+        mDashboardAdapter = new DashboardAdapter(getChildFragmentManager(),
+                DashboardAdapter.DEFAULT_MAX_LIVE_PAGES);
         mViewPager.setAdapter(mDashboardAdapter);
         mViewPager.addOnPageChangeListener(this);
 
+        /* tabs are bound to pager once and then updated in place on each reload */
+        mViewPager.addOnPageChangeListener(new TabLayout.TabLayoutOnPageChangeListener(mTabs));
+        mTabs.setOnTabSelectedListener(new TabLayout.ViewPagerOnTabSelectedListener(mViewPager));
+
         mToolbar.setNavigationIcon(R.mipmap.ic_menu);
         mToolbar.setNavigationOnClickListener(this);
         mToolbar.setTitle(R.string.dashboard);
@@ -127,6 +141,19 @@ public class DashboardViewPagerFragment extends BaseFragment
         }
     }
 
+    @Override
+    public void onDestroyView() {
+        mItemViewPool.cancelWarmUp();
+        super.onDestroyView();
+    }
+
+    /**
+     * @return pool of item views which is shared by all dashboard pages.
+     */
+    public DashboardItemViewPool getItemViewPool() {
+        return mItemViewPool;
+    }
+
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
@@ -145,8 +172,8 @@ public class DashboardViewPagerFragment extends BaseFragment
         if (id == LOADER_ID && isAdded()) {
             List<TrackedTable> trackedTables = Arrays.asList(
                     new TrackedTable(Dashboard.class));
-            return new DbLoader<>(getActivity().getApplicationContext(),
-                    trackedTables, new DashboardQuery());
+            return new SyncAwareDbLoader<>(getActivity().getApplicationContext(),
+                    trackedTables, new DashboardQuery(), ResourceType.DASHBOARDS);
         }
         return null;
     }
@@ -185,6 +212,19 @@ public class DashboardViewPagerFragment extends BaseFragment
                 .setVisible(dashboardAccess.isUpdate());
         menu.findItem(R.id.manage_dashboard)
                 .setVisible(dashboardAccess.isUpdate());
+        menu.findItem(R.id.keep_offline)
+                .setChecked(OfflinePack.getInstance().isPacked(dashboard));
+
+        // user is likely to swipe to one of neighbours next
+        prefetchImages(position - 1);
+        prefetchImages(position + 1);
+    }
+
+    private void prefetchImages(int position) {
+        Fragment fragment = mDashboardAdapter.getFragment(position);
+        if (fragment instanceof DashboardFragment) {
+            ((DashboardFragment) fragment).prefetchImages();
+        }
     }
 
     @Override
@@ -208,10 +248,32 @@ public class DashboardViewPagerFragment extends BaseFragment
 
     private void setDashboards(List<Dashboard> dashboards) {
         mDashboardAdapter.swapData(dashboards);
-        mTabs.removeAllTabs();
+        updateTabs();
+    }
+
+    /* changes only tabs whose titles differ, instead of re-creating all of them */
+    private void updateTabs() {
+        int count = mDashboardAdapter.getCount();
+        for (int position = 0; position < count; position++) {
+            CharSequence title = mDashboardAdapter.getPageTitle(position);
+            if (position < mTabs.getTabCount()) {
+                TabLayout.Tab tab = mTabs.getTabAt(position);
+                if (!TextUtils.equals(tab.getText(), title)) {
+                    tab.setText(title);
+                }
+            } else {
+                mTabs.addTab(mTabs.newTab().setText(title), false);
+            }
+        }
+
+        while (mTabs.getTabCount() > count) {
+            mTabs.removeTabAt(mTabs.getTabCount() - 1);
+        }
 
-        if (dashboards != null && !dashboards.isEmpty()) {
-            mTabs.setupWithViewPager(mViewPager);
+        // reselecting tab which is already selected has no effect
+        int currentItem = mViewPager.getCurrentItem();
+        if (currentItem < mTabs.getTabCount()) {
+            mTabs.getTabAt(currentItem).select();
         }
     }
 
@@ -242,6 +304,14 @@ public class DashboardViewPagerFragment extends BaseFragment
                         .show(getChildFragmentManager());
                 return true;
             }
+            case R.id.keep_offline: {
+                Dashboard dashboard = mDashboardAdapter
+                        .getDashboard(mViewPager.getCurrentItem());
+                item.setChecked(!item.isChecked());
+                OfflinePack.getInstance().setPacked(dashboard, item.isChecked());
+                DhisService.getInstance().refreshOfflinePack();
+                return true;
+            }
         }
         return false;
     }
@@ -259,6 +329,14 @@ public class DashboardViewPagerFragment extends BaseFragment
         }
     }
 
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void onJobCancelled(NetworkJob.NetworkJobCancelled event) {
+        if (event.getResourceType() == ResourceType.DASHBOARDS) {
+            mProgressBar.setVisibility(View.INVISIBLE);
+        }
+    }
+
     private static class DashboardQuery implements Query<List<Dashboard>> {
 
         @Override
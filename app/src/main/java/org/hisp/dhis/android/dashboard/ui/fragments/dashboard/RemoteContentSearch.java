@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.ui.fragments.dashboard;
+
+import android.os.SystemClock;
+import android.support.v4.util.LruCache;
+
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import org.hisp.dhis.android.dashboard.ui.adapters.DashboardItemSearchDialogAdapter.OptionAdapterValue;
+import org.hisp.dhis.android.sdk.core.api.Dhis2;
+import org.hisp.dhis.android.sdk.core.network.RepositoryManager;
+import org.hisp.dhis.android.sdk.models.dashboard.DashboardItemContent;
+import org.hisp.dhis.android.sdk.models.user.UserAccount;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches dashboard item content on server, page by page, using filter on display
+ * name of each resource type. Pages are kept in memory for a while, so that going
+ * back to previous query (for example, deleting a character) does not hit server.
+ * Cached pages belong to server and user they were retrieved for.
+ */
+public final class RemoteContentSearch {
+    static final int PAGE_SIZE = 25;
+
+    private static final int CACHE_SIZE = 64;
+    private static final long CACHE_TTL = TimeUnit.MINUTES.toMillis(5);
+
+    private static final String FIELDS = "id,displayName";
+    private static final String ID = "id";
+    private static final String DISPLAY_NAME = "displayName";
+    private static final String PAGER = "pager";
+    private static final String PAGE_COUNT = "pageCount";
+    private static final String TOTAL = "total";
+
+    private static final Map<String, String> RESOURCES = new HashMap<>();
+
+    static {
+        RESOURCES.put(DashboardItemContent.TYPE_CHART, "charts");
+        RESOURCES.put(DashboardItemContent.TYPE_EVENT_CHART, "eventCharts");
+        RESOURCES.put(DashboardItemContent.TYPE_MAP, "maps");
+        RESOURCES.put(DashboardItemContent.TYPE_REPORT_TABLE, "reportTables");
+        RESOURCES.put(DashboardItemContent.TYPE_EVENT_REPORT, "eventReports");
+        RESOURCES.put(DashboardItemContent.TYPE_USERS, "users");
+        RESOURCES.put(DashboardItemContent.TYPE_REPORTS, "reports");
+        RESOURCES.put(DashboardItemContent.TYPE_RESOURCES, "documents");
+    }
+
+    private static final LruCache<String, Page> CACHE = new LruCache<>(CACHE_SIZE);
+
+    private static final Comparator<OptionAdapterValue> LABEL_COMPARATOR =
+            new Comparator<OptionAdapterValue>() {
+                @Override
+                public int compare(OptionAdapterValue lhs, OptionAdapterValue rhs) {
+                    return String.CASE_INSENSITIVE_ORDER.compare(lhs.label, rhs.label);
+                }
+            };
+
+    private RemoteContentSearch() {
+        // no instances
+    }
+
+    /**
+     * Has to be called on background thread.
+     *
+     * @param query text which display names have to contain.
+     * @param types types of dashboard item content to search for.
+     * @param page  page number, starting from 0.
+     * @throws IOException if server can't be reached.
+     */
+    static Page search(String query, List<String> types, int page) throws IOException {
+        UserAccount userAccount = Dhis2.getCurrentUserAccount();
+        String key = Dhis2.getServerUrl() + "/" + (userAccount == null ? "" :
+                userAccount.getUId()) + "/" + types + "/" + page + "/" + query;
+        Page cached = CACHE.get(key);
+        if (cached != null && SystemClock.elapsedRealtime() - cached.mTime < CACHE_TTL) {
+            return cached;
+        }
+
+        List<List<OptionAdapterValue>> valuesOfTypes = new ArrayList<>();
+        boolean hasMore = false;
+        int total = 0;
+        for (String type : types) {
+            String resource = RESOURCES.get(type);
+            if (resource == null) {
+                continue;
+            }
+
+            HttpUrl.Builder url = Dhis2.getServerUrl().newBuilder()
+                    .addPathSegment("api").addPathSegment(resource)
+                    .addQueryParameter("fields", FIELDS)
+                    .addQueryParameter("order", DISPLAY_NAME + ":asc")
+                    .addQueryParameter("page", Integer.toString(page + 1))
+                    .addQueryParameter("pageSize", Integer.toString(PAGE_SIZE));
+            if (!query.isEmpty()) {
+                url.addQueryParameter("filter", DISPLAY_NAME + ":ilike:" + query);
+            }
+
+            Response response = RepositoryManager.provideOkHttpClient()
+                    .newCall(new Request.Builder().url(url.build()).get().build()).execute();
+            if (!response.isSuccessful()) {
+                response.body().close();
+                throw new IOException("Unexpected response code: " + response.code());
+            }
+
+            try {
+                JSONObject json = new JSONObject(response.body().string());
+                JSONArray items = json.optJSONArray(resource);
+                List<OptionAdapterValue> values = new ArrayList<>();
+                valuesOfTypes.add(values);
+                for (int index = 0; items != null && index < items.length(); index++) {
+                    JSONObject item = items.getJSONObject(index);
+                    values.add(new OptionAdapterValue(item.getString(ID),
+                            item.optString(DISPLAY_NAME, item.getString(ID)), type));
+                }
+
+                JSONObject pager = json.optJSONObject(PAGER);
+                if (pager != null) {
+                    hasMore |= pager.optInt(PAGE_COUNT) > page + 1;
+                    total += pager.optInt(TOTAL);
+                }
+            } catch (JSONException e) {
+                throw new IOException(e);
+            }
+        }
+
+        Page result = new Page(merge(valuesOfTypes), hasMore, total);
+        CACHE.put(key, result);
+        return result;
+    }
+
+    /**
+     * Drops all cached pages, has to be called when user logs out.
+     */
+    public static void clearCache() {
+        CACHE.evictAll();
+    }
+
+    /* each type is sorted by server, so sorted lists are merged into one for the page.
+    Pages themselves can't be ordered across types, since each type is paged separately */
+    static List<OptionAdapterValue> merge(List<List<OptionAdapterValue>> lists) {
+        List<OptionAdapterValue> merged = new ArrayList<>();
+        for (List<OptionAdapterValue> list : lists) {
+            List<OptionAdapterValue> previous = merged;
+            merged = new ArrayList<>(previous.size() + list.size());
+
+            int left = 0;
+            int right = 0;
+            while (left < previous.size() && right < list.size()) {
+                if (LABEL_COMPARATOR.compare(previous.get(left), list.get(right)) <= 0) {
+                    merged.add(previous.get(left++));
+                } else {
+                    merged.add(list.get(right++));
+                }
+            }
+            merged.addAll(previous.subList(left, previous.size()));
+            merged.addAll(list.subList(right, list.size()));
+        }
+        return merged;
+    }
+
+    static final class Page {
+        final List<OptionAdapterValue> mValues;
+        final boolean mHasMore;
+
+        /* number of items matching query on all pages */
+        final int mTotal;
+        final long mTime;
+
+        Page(List<OptionAdapterValue> values, boolean hasMore, int total) {
+            mValues = Collections.unmodifiableList(values);
+            mHasMore = hasMore;
+            mTotal = total;
+            mTime = SystemClock.elapsedRealtime();
+        }
+    }
+}
@@ -104,4 +104,12 @@ public class InterpretationEmptyFragment extends BaseFragment implements View.On
             mProgressBar.setVisibility(View.INVISIBLE);
         }
     }
+
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void onJobCancelled(NetworkJob.NetworkJobCancelled event) {
+        if (event.getResourceType() == ResourceType.INTERPRETATIONS) {
+            mProgressBar.setVisibility(View.INVISIBLE);
+        }
+    }
 }
@@ -266,6 +266,14 @@ public final class InterpretationFragment extends BaseFragment
         }
     }
 
+    @Subscribe
+    @SuppressWarnings("unused")
+    public void onJobCancelled(NetworkJob.NetworkJobCancelled event) {
+        if (event.getResourceType() == ResourceType.INTERPRETATIONS) {
+            mProgressBar.setVisibility(View.INVISIBLE);
+        }
+    }
+
     @Subscribe
     @SuppressWarnings("unused")
     public void onUiEventReceived(UiEvent uiEvent) {
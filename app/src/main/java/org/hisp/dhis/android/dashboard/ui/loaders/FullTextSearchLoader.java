@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.ui.loaders;
+
+import android.content.Context;
+
+import org.hisp.dhis.android.dashboard.sync.FullTextIndex;
+import org.hisp.dhis.android.sdk.core.persistence.loaders.DbLoader;
+import org.hisp.dhis.android.sdk.core.persistence.loaders.TrackedTable;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loader of {@link FullTextSearchQuery} results. Index is updated by background job
+ * after tables are synced, so instead of tracking tables, loader reloads results
+ * each time changes to index are committed.
+ */
+public class FullTextSearchLoader extends DbLoader<List<FullTextIndex.Result>>
+        implements FullTextIndex.Listener {
+
+    public FullTextSearchLoader(Context context, FullTextSearchQuery query) {
+        super(context, Collections.<TrackedTable>emptyList(), query);
+        setUpdateThrottle(SyncAwareDbLoader.DEFAULT_UPDATE_THROTTLE);
+    }
+
+    @Override
+    protected void onStartLoading() {
+        FullTextIndex.getInstance().register(this);
+        super.onStartLoading();
+    }
+
+    @Override
+    public void onIndexUpdated() {
+        onContentChanged();
+    }
+
+    @Override
+    protected void onReset() {
+        FullTextIndex.getInstance().unregister(this);
+        super.onReset();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.ui.loaders;
+
+import android.content.Context;
+
+import org.hisp.dhis.android.dashboard.sync.FullTextIndex;
+import org.hisp.dhis.android.sdk.core.persistence.loaders.Query;
+
+import java.util.List;
+
+/**
+ * Query which searches dashboards, dashboard item contents and interpretations
+ * through {@link FullTextIndex}. Index is updated after tables are synced, so
+ * query should be run by {@link FullTextSearchLoader}, which reloads results
+ * once the index has caught up.
+ */
+public class FullTextSearchQuery implements Query<List<FullTextIndex.Result>> {
+    public static final int DEFAULT_LIMIT = 50;
+
+    private final String mQuery;
+    private final int mLimit;
+
+    public FullTextSearchQuery(String query) {
+        this(query, DEFAULT_LIMIT);
+    }
+
+    public FullTextSearchQuery(String query, int limit) {
+        mQuery = query;
+        mLimit = limit;
+    }
+
+    @Override
+    public List<FullTextIndex.Result> query(Context context) {
+        return FullTextIndex.getInstance().search(mQuery, mLimit);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.ui.loaders;
+
+import android.content.Context;
+
+import org.hisp.dhis.android.dashboard.sync.SyncTransactions;
+import org.hisp.dhis.android.sdk.core.persistence.loaders.DbLoader;
+import org.hisp.dhis.android.sdk.core.persistence.loaders.Query;
+import org.hisp.dhis.android.sdk.core.persistence.loaders.TrackedTable;
+import org.hisp.dhis.android.sdk.core.persistence.preferences.ResourceType;
+
+import java.util.List;
+
+import static org.hisp.dhis.android.sdk.models.utils.Preconditions.isNull;
+
+/**
+ * DbLoader which does not react to each change in tracked tables while the given resource
+ * is being synced. All changes made by sync result in one reload when sync is over.
+ * Also, reloads are never started more often than once per {@link #DEFAULT_UPDATE_THROTTLE}.
+ */
+public class SyncAwareDbLoader<T> extends DbLoader<T> implements SyncTransactions.Listener {
+    public static final long DEFAULT_UPDATE_THROTTLE = 500;
+
+    private final ResourceType mResourceType;
+    private boolean mHasPendingChanges;
+
+    public SyncAwareDbLoader(Context context, List<TrackedTable> trackedTables,
+                             Query<T> query, ResourceType resourceType) {
+        super(context, trackedTables, query);
+
+        mResourceType = isNull(resourceType, "ResourceType must not be null");
+        setUpdateThrottle(DEFAULT_UPDATE_THROTTLE);
+    }
+
+    @Override
+    protected void onStartLoading() {
+        SyncTransactions.register(this);
+        super.onStartLoading();
+    }
+
+    @Override
+    public void onContentChanged() {
+        if (SyncTransactions.isInProgress(mResourceType)) {
+            mHasPendingChanges = true;
+        } else {
+            super.onContentChanged();
+        }
+    }
+
+    @Override
+    public void onSyncFinished(ResourceType resourceType) {
+        if (mResourceType == resourceType && mHasPendingChanges) {
+            mHasPendingChanges = false;
+            onContentChanged();
+        }
+    }
+
+    @Override
+    protected void onReset() {
+        SyncTransactions.unregister(this);
+        mHasPendingChanges = false;
+        super.onReset();
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.ui.models;
+
+import android.content.Context;
+
+import org.hisp.dhis.android.dashboard.R;
+import org.hisp.dhis.android.dashboard.utils.ImageRequestPlanner;
+import org.hisp.dhis.android.sdk.models.common.Access;
+import org.hisp.dhis.android.sdk.models.dashboard.DashboardElement;
+import org.hisp.dhis.android.sdk.models.dashboard.DashboardItem;
+import org.hisp.dhis.android.sdk.models.dashboard.DashboardItemContent;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything what is shown in one cell of dashboard grid, resolved in advance.
+ * Models are built by loader on background thread, so that binding them
+ * to views comes down to assignment of fields.
+ */
+public final class DashboardItemModel {
+    /**
+     * Basically we have three types of dashboard items:
+     * 1) Item which can be represented as image: charts, event charts, maps.
+     * 2) Item which contain tables: report table, event report.
+     * 3) Item which contains links to content: resource, reports, users.
+     */
+    public static final int VIEW_TYPE_IMAGE = 0;
+    public static final int VIEW_TYPE_TABLE = 1;
+    public static final int VIEW_TYPE_LIST = 2;
+
+    private static final String DATE_FORMAT = "MMMM dd, YYYY";
+    private static final String EMPTY_FIELD = "";
+
+    private final DashboardItem mItem;
+    private final int mViewType;
+    private final int mSpanSize;
+    private final String mTitle;
+    private final String mLastUpdated;
+    private final DashboardElement mElement;
+    private final List<DashboardElement> mElements;
+    private final String mImageUrl;
+    private final boolean mIsShareable;
+    private final boolean mIsMenuVisible;
+
+    private DashboardItemModel(DashboardItem item, int viewType, int spanSize, String title,
+                               String lastUpdated, DashboardElement element,
+                               List<DashboardElement> elements, String imageUrl,
+                               boolean isShareable, boolean isMenuVisible) {
+        mItem = item;
+        mViewType = viewType;
+        mSpanSize = spanSize;
+        mTitle = title;
+        mLastUpdated = lastUpdated;
+        mElement = element;
+        mElements = elements;
+        mImageUrl = imageUrl;
+        mIsShareable = isShareable;
+        mIsMenuVisible = isMenuVisible;
+    }
+
+    public DashboardItem getItem() {
+        return mItem;
+    }
+
+    public int getViewType() {
+        return mViewType;
+    }
+
+    public int getSpanSize() {
+        return mSpanSize;
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public String getLastUpdated() {
+        return mLastUpdated;
+    }
+
+    /**
+     * @return content of image and table items, null for list items.
+     */
+    public DashboardElement getElement() {
+        return mElement;
+    }
+
+    /**
+     * @return content of list items, empty list for other items.
+     */
+    public List<DashboardElement> getElements() {
+        return mElements;
+    }
+
+    public String getImageUrl() {
+        return mImageUrl;
+    }
+
+    public boolean isShareable() {
+        return mIsShareable;
+    }
+
+    public boolean isMenuVisible() {
+        return mIsMenuVisible;
+    }
+
+    /**
+     * Builds models for items of one dashboard. Span sizes and image URLs depend on
+     * configuration of the window, so factory has to be created from activity context
+     * and re-created when configuration changes. Factory keeps no reference to context,
+     * so it can be used by loader on background thread.
+     */
+    public static final class Factory {
+        private final Access mDashboardAccess;
+        private final int mMaxSpanCount;
+        private final ImageRequestPlanner mImageRequestPlanner;
+
+        private final String mUsersName;
+        private final String mReportsName;
+        private final String mResourcesName;
+
+        public Factory(Context context, Access dashboardAccess) {
+            mDashboardAccess = dashboardAccess;
+            mMaxSpanCount = context.getResources().getInteger(R.integer.column_nums);
+            mImageRequestPlanner = new ImageRequestPlanner(context, mMaxSpanCount);
+
+            mUsersName = context.getString(R.string.users);
+            mReportsName = context.getString(R.string.reports);
+            mResourcesName = context.getString(R.string.resources);
+        }
+
+        /**
+         * @return model of given item, or null if items of this type can't be shown.
+         */
+        public DashboardItemModel create(DashboardItem item) {
+            String type = item.getType();
+            if (type == null) {
+                return null;
+            }
+
+            int viewType;
+            String resource = null;
+            String title;
+            DashboardElement element = null;
+            List<DashboardElement> elements = null;
+            switch (type) {
+                case DashboardItemContent.TYPE_CHART:
+                    viewType = VIEW_TYPE_IMAGE;
+                    resource = "charts";
+                    element = item.getChart();
+                    title = getDisplayName(element);
+                    break;
+                case DashboardItemContent.TYPE_EVENT_CHART:
+                    viewType = VIEW_TYPE_IMAGE;
+                    resource = "eventCharts";
+                    element = item.getEventChart();
+                    title = getDisplayName(element);
+                    break;
+                case DashboardItemContent.TYPE_MAP:
+                    viewType = VIEW_TYPE_IMAGE;
+                    resource = "maps";
+                    element = item.getMap();
+                    title = getDisplayName(element);
+                    break;
+                case DashboardItemContent.TYPE_REPORT_TABLE:
+                    viewType = VIEW_TYPE_TABLE;
+                    element = item.getReportTable();
+                    title = getDisplayName(element);
+                    break;
+                case DashboardItemContent.TYPE_EVENT_REPORT:
+                    viewType = VIEW_TYPE_TABLE;
+                    element = item.getEventReport();
+                    title = getDisplayName(element);
+                    break;
+                case DashboardItemContent.TYPE_USERS:
+                    viewType = VIEW_TYPE_LIST;
+                    elements = item.getUsers();
+                    title = mUsersName;
+                    break;
+                case DashboardItemContent.TYPE_REPORTS:
+                    viewType = VIEW_TYPE_LIST;
+                    elements = item.getReports();
+                    title = mReportsName;
+                    break;
+                case DashboardItemContent.TYPE_RESOURCES:
+                    viewType = VIEW_TYPE_LIST;
+                    elements = item.getResources();
+                    title = mResourcesName;
+                    break;
+                default:
+                    return null;
+            }
+
+            int spanSize = getSpanSize(item.getShape());
+            String imageUrl = null;
+            if (resource != null && element != null) {
+                imageUrl = mImageRequestPlanner.buildImageUrl(resource,
+                        element.getUId(), item.getLastUpdated(), spanSize);
+            }
+
+            String lastUpdated = item.getLastUpdated() == null ?
+                    EMPTY_FIELD : item.getLastUpdated().toString(DATE_FORMAT);
+
+            /* only charts, maps and report tables can be shared through interpretations */
+            boolean isShareable = DashboardItemContent.TYPE_CHART.equals(type) ||
+                    DashboardItemContent.TYPE_MAP.equals(type) ||
+                    DashboardItemContent.TYPE_REPORT_TABLE.equals(type);
+            boolean isMenuVisible = isShareable || mDashboardAccess.isUpdate();
+
+            return new DashboardItemModel(item, viewType, spanSize, title, lastUpdated,
+                    element, elements != null ? elements : Collections.<DashboardElement>emptyList(),
+                    imageUrl, isShareable, isMenuVisible);
+        }
+
+        private int getSpanSize(String shape) {
+            if (shape == null) {
+                shape = DashboardItem.SHAPE_NORMAL;
+            }
+
+            switch (shape) {
+                case DashboardItem.SHAPE_FULL_WIDTH:
+                    return mMaxSpanCount;
+                case DashboardItem.SHAPE_DOUBLE_WIDTH:
+                    return mMaxSpanCount == 3 || mMaxSpanCount == 4 ? 2 : 1;
+                default:
+                    return 1;
+            }
+        }
+
+        private static String getDisplayName(DashboardElement element) {
+            return element != null ? element.getDisplayName() : EMPTY_FIELD;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.ui.models;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Report table in form of grid: header row and rows of cells. Columns which
+ * describe dimensions (for example, organisation units or periods) go first.
+ */
+public final class ReportTable {
+    private static final String HEADERS = "headers";
+    private static final String ROWS = "rows";
+    private static final String META_DATA = "metaData";
+    private static final String NAMES = "names";
+    private static final String COLUMN = "column";
+    private static final String NAME = "name";
+    private static final String HIDDEN = "hidden";
+    private static final String META = "meta";
+
+    private final String[] mHeaders;
+    private final List<String[]> mRows;
+    private final int mDimensionCount;
+
+    public ReportTable(String[] headers, List<String[]> rows, int dimensionCount) {
+        mHeaders = headers;
+        mRows = Collections.unmodifiableList(rows);
+        mDimensionCount = dimensionCount;
+    }
+
+    /**
+     * Parses grid returned by api/reportTables/{uid}/data.json while it is read, so
+     * that grid never exists in memory as text or as tree of JSON objects. Hidden
+     * columns are skipped, identifiers in dimension columns are replaced with display
+     * names and null values become empty cells.
+     *
+     * @throws IOException if grid is malformed or can't be read.
+     */
+    public static ReportTable fromJson(JsonReader reader) throws IOException {
+        List<Header> headers = null;
+        Map<String, String> names = null;
+        List<String[]> rows = null;
+
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (HEADERS.equals(name)) {
+                    headers = readHeaders(reader);
+                } else if (META_DATA.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    names = readNames(reader);
+                } else if (ROWS.equals(name)) {
+                    rows = readRows(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException(e);
+        }
+
+        if (headers == null || rows == null) {
+            throw new IOException("Grid has no headers or rows");
+        }
+        return create(headers, names, rows);
+    }
+
+    /**
+     * Builds table out of parsed grid. Rows are replaced in given list one by one,
+     * so rows with all columns and rows with visible ones never exist at the same time.
+     */
+    static ReportTable create(List<Header> headers, Map<String, String> names,
+                              List<String[]> rows) {
+        /* dimension columns are moved in front, so they can be frozen */
+        List<Integer> columns = new ArrayList<>();
+        int dimensionCount = 0;
+        for (int index = 0; index < headers.size(); index++) {
+            Header header = headers.get(index);
+            if (header.isHidden) {
+                continue;
+            }
+
+            if (header.isMeta) {
+                columns.add(dimensionCount++, index);
+            } else {
+                columns.add(index);
+            }
+        }
+
+        String[] headerRow = new String[columns.size()];
+        for (int column = 0; column < headerRow.length; column++) {
+            headerRow[column] = headers.get(columns.get(column)).getTitle();
+        }
+
+        for (int index = 0; index < rows.size(); index++) {
+            String[] row = rows.get(index);
+            String[] cells = new String[columns.size()];
+            for (int column = 0; column < cells.length; column++) {
+                int position = columns.get(column);
+                String value = position < row.length ? row[position] : "";
+                if (column < dimensionCount && names != null && names.get(value) != null) {
+                    value = names.get(value);
+                }
+                cells[column] = value;
+            }
+            rows.set(index, cells);
+        }
+
+        return new ReportTable(headerRow, rows, dimensionCount);
+    }
+
+    private static List<Header> readHeaders(JsonReader reader) throws IOException {
+        List<Header> headers = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String column = null;
+            String name = null;
+            boolean isHidden = false;
+            boolean isMeta = false;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (COLUMN.equals(key)) {
+                    column = nextString(reader);
+                } else if (NAME.equals(key)) {
+                    name = nextString(reader);
+                } else if (HIDDEN.equals(key) && reader.peek() == JsonToken.BOOLEAN) {
+                    isHidden = reader.nextBoolean();
+                } else if (META.equals(key) && reader.peek() == JsonToken.BOOLEAN) {
+                    isMeta = reader.nextBoolean();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            headers.add(new Header(column, name, isHidden, isMeta));
+        }
+        reader.endArray();
+        return headers;
+    }
+
+    /* only names are taken from meta data, identifiers are mapped to display names */
+    private static Map<String, String> readNames(JsonReader reader) throws IOException {
+        Map<String, String> names = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (NAMES.equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String id = reader.nextName();
+                    String name = nextString(reader);
+                    if (name != null) {
+                        names.put(id, name);
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return names;
+    }
+
+    private static List<String[]> readRows(JsonReader reader) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        List<String> cells = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            cells.clear();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String value = nextString(reader);
+                cells.add(value == null ? "" : value);
+            }
+            reader.endArray();
+            rows.add(cells.toArray(new String[cells.size()]));
+        }
+        reader.endArray();
+        return rows;
+    }
+
+    /* numbers and booleans are kept as they are written, null is returned as null */
+    private static String nextString(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL:
+                reader.nextNull();
+                return null;
+            case BOOLEAN:
+                return Boolean.toString(reader.nextBoolean());
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+
+    public String[] getHeaders() {
+        return mHeaders;
+    }
+
+    public List<String[]> getRows() {
+        return mRows;
+    }
+
+    public int getColumnCount() {
+        return mHeaders.length;
+    }
+
+    public int getDimensionCount() {
+        return mDimensionCount;
+    }
+
+    static final class Header {
+        final String column;
+        final String name;
+        final boolean isHidden;
+        final boolean isMeta;
+
+        Header(String column, String name, boolean isHidden, boolean isMeta) {
+            this.column = column;
+            this.name = name;
+            this.isHidden = isHidden;
+            this.isMeta = isMeta;
+        }
+
+        /* readable column title if server has sent it, otherwise name of dimension */
+        String getTitle() {
+            if (column != null) {
+                return column;
+            }
+            return name == null ? "" : name;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.ui.views;
+
+import android.content.Context;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.Picasso;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * OnScrollListener which warms up image cache for items which are going to be shown
+ * next, in direction of scrolling. Faster scrolling means more items are prefetched.
+ * During flings images are not loaded at all, since rows fly by before images arrive.
+ */
+public class ImagePrefetcher extends RecyclerView.OnScrollListener {
+    /* scrolling further than this within one callback is considered fast */
+    private static final int FAST_SCROLL_DISTANCE_DP = 40;
+
+    /* Picasso (2.5.2) can't cancel fetch() requests, neither by tag nor in other way,
+    so only few of them are handed over at a time, rest is waiting in mPendingUrls */
+    private static final int MAX_FETCHES_IN_FLIGHT = 2;
+
+    private final GridLayoutManager mLayoutManager;
+    private final ImageUrlProvider mImageUrlProvider;
+    private final Picasso mPicasso;
+
+    /* number of items to prefetch when scrolling slowly */
+    private final int mPrefetchCount;
+    private final int mFastScrollDistance;
+
+    /* tag is used only to pause prefetches during flings */
+    private final Object mPrefetchTag;
+    private final Set<String> mPrefetchedUrls;
+    private final Deque<String> mPendingUrls;
+    private int mFetchesInFlight;
+    private int mPrefetchStart;
+    private int mPrefetchEnd;
+
+    private int mScrollState;
+    private boolean mIsScrollingUp;
+    private boolean mIsScrollingFast;
+
+    public ImagePrefetcher(Context context, GridLayoutManager layoutManager, Picasso picasso,
+                           ImageUrlProvider imageUrlProvider, int prefetchCount) {
+        mLayoutManager = layoutManager;
+        mImageUrlProvider = imageUrlProvider;
+        mPicasso = picasso;
+        mPrefetchCount = prefetchCount;
+        mFastScrollDistance = Math.round(FAST_SCROLL_DISTANCE_DP *
+                context.getResources().getDisplayMetrics().density);
+
+        mPrefetchTag = new Object();
+        mPrefetchedUrls = new HashSet<>();
+        mPendingUrls = new ArrayDeque<>();
+        mScrollState = RecyclerView.SCROLL_STATE_IDLE;
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        mScrollState = newState;
+
+        if (newState == RecyclerView.SCROLL_STATE_SETTLING) {
+            mPicasso.pauseTag(mImageUrlProvider.getImageTag());
+            mPicasso.pauseTag(mPrefetchTag);
+        } else {
+            mPicasso.resumeTag(mImageUrlProvider.getImageTag());
+            mPicasso.resumeTag(mPrefetchTag);
+            prefetch();
+        }
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dy == 0) {
+            return;
+        }
+
+        mIsScrollingUp = dy < 0;
+        mIsScrollingFast = Math.abs(dy) >= mFastScrollDistance;
+
+        if (mScrollState != RecyclerView.SCROLL_STATE_SETTLING) {
+            prefetch();
+        }
+    }
+
+    /**
+     * Prefetches images of items which follow visible ones, as if list was scrolled down.
+     * Can be used in order to warm up cache of lists which are not on screen yet.
+     */
+    public void prefetch() {
+        int firstVisible = mLayoutManager.findFirstVisibleItemPosition();
+        int lastVisible = mLayoutManager.findLastVisibleItemPosition();
+        if (firstVisible == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        int count = mIsScrollingFast ? mPrefetchCount * 2 : mPrefetchCount;
+        int start;
+        int end;
+        if (mIsScrollingUp) {
+            start = Math.max(firstVisible - count, 0);
+            end = firstVisible;
+        } else {
+            start = lastVisible + 1;
+            end = Math.min(lastVisible + 1 + count, mLayoutManager.getItemCount());
+        }
+
+        // items which scrolled out of range are not going to be shown soon
+        int rangeStart = Math.max(firstVisible - count, 0);
+        int rangeEnd = lastVisible + 1 + count;
+        if (mPrefetchStart < rangeStart || mPrefetchEnd > rangeEnd) {
+            cancel();
+        }
+
+        mPrefetchStart = Math.min(mPrefetchStart, start);
+        mPrefetchEnd = Math.max(mPrefetchEnd, end);
+        if (mPrefetchedUrls.isEmpty()) {
+            mPrefetchStart = start;
+            mPrefetchEnd = end;
+        }
+
+        for (int position = start; position < end; position++) {
+            String imageUrl = mImageUrlProvider.getImageUrl(position);
+            if (imageUrl != null && mPrefetchedUrls.add(imageUrl)) {
+                mPendingUrls.add(imageUrl);
+            }
+        }
+        fetchNext();
+    }
+
+    /**
+     * Cancels all prefetches which were not handed over to Picasso yet.
+     * At most {@link #MAX_FETCHES_IN_FLIGHT} fetches which are already
+     * in progress are left to finish, since Picasso can't cancel them.
+     */
+    public void cancel() {
+        // tag could have been paused during fling
+        mPicasso.resumeTag(mPrefetchTag);
+
+        mPendingUrls.clear();
+        mPrefetchedUrls.clear();
+        mPrefetchStart = 0;
+        mPrefetchEnd = 0;
+    }
+
+    private void fetchNext() {
+        while (mFetchesInFlight < MAX_FETCHES_IN_FLIGHT && !mPendingUrls.isEmpty()) {
+            mFetchesInFlight++;
+            mPicasso.load(mPendingUrls.poll())
+                    .tag(mPrefetchTag)
+                    .priority(Picasso.Priority.LOW)
+                    .fetch(new FetchCallback());
+        }
+    }
+
+    /* callbacks are delivered on main thread, same as scroll events */
+    private class FetchCallback implements Callback {
+
+        @Override
+        public void onSuccess() {
+            onFetchFinished();
+        }
+
+        @Override
+        public void onError() {
+            onFetchFinished();
+        }
+
+        private void onFetchFinished() {
+            mFetchesInFlight--;
+            fetchNext();
+        }
+    }
+
+    public interface ImageUrlProvider {
+        /**
+         * @return URL of image of item at given position or null if item has no image.
+         */
+        String getImageUrl(int position);
+
+        /**
+         * @return tag which is given to requests made while binding items.
+         */
+        Object getImageTag();
+    }
+}
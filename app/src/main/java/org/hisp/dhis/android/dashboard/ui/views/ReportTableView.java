@@ -0,0 +1,465 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.ui.views;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.support.v4.view.ViewCompat;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+import android.widget.OverScroller;
+
+import org.hisp.dhis.android.dashboard.R;
+import org.hisp.dhis.android.dashboard.ui.models.ReportTable;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Renders report table natively. Rows are recycled by RecyclerView, which scrolls
+ * vertically, while cells of each row are drawn directly on canvas: only cells which
+ * are currently visible are drawn, no matter how many columns table has. Header row
+ * and dimension columns stay in place while table is scrolled.
+ */
+public class ReportTableView extends LinearLayout {
+    private static final int TEXT_SIZE_SP = 14;
+    private static final int CELL_PADDING_DP = 12;
+    private static final int ROW_PADDING_DP = 10;
+    private static final int MIN_COLUMN_WIDTH_DP = 64;
+    private static final int MAX_COLUMN_WIDTH_DP = 240;
+    private static final int TEXT_COLOR = 0xDE000000;
+
+    /* widths of columns are measured on first rows only, longer texts are clipped */
+    private static final int MEASURED_ROWS = 200;
+
+    private final TextPaint mTextPaint;
+    private final TextPaint mHeaderTextPaint;
+    private final Paint mDividerPaint;
+    private final Paint mBackgroundPaint;
+    private final Paint mHeaderBackgroundPaint;
+
+    private final int mCellPadding;
+    private final int mRowHeight;
+    private final int mTextBaseline;
+
+    private final OverScroller mScroller;
+    private final int mTouchSlop;
+    private final int mMinimumVelocity;
+    private final int mMaximumVelocity;
+
+    private final RowView mHeaderView;
+    private final RecyclerView mRecyclerView;
+    private final RowAdapter mAdapter;
+
+    private ReportTable mReportTable;
+
+    /* left edges of columns, the last value is width of the whole table */
+    private int[] mColumnLefts;
+    private int mFrozenCount;
+    private int mOffset;
+
+    private VelocityTracker mVelocityTracker;
+    private float mDownX;
+    private float mDownY;
+    private float mLastX;
+    private boolean mIsDragging;
+
+    public ReportTableView(Context context) {
+        this(context, null);
+    }
+
+    public ReportTableView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        setOrientation(VERTICAL);
+
+        mTextPaint = newTextPaint(getResources(), false);
+        mHeaderTextPaint = newTextPaint(getResources(), true);
+
+        mDividerPaint = new Paint();
+        mDividerPaint.setColor(getResources().getColor(R.color.dark_grey));
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(Color.WHITE);
+
+        mHeaderBackgroundPaint = new Paint();
+        mHeaderBackgroundPaint.setColor(getResources().getColor(R.color.light_grey));
+
+        mCellPadding = dpToPx(getResources(), CELL_PADDING_DP);
+
+        Paint.FontMetricsInt fontMetrics = mHeaderTextPaint.getFontMetricsInt();
+        int rowPadding = dpToPx(getResources(), ROW_PADDING_DP);
+        mRowHeight = rowPadding * 2 + fontMetrics.descent - fontMetrics.ascent;
+        mTextBaseline = rowPadding - fontMetrics.ascent;
+
+        ViewConfiguration configuration = ViewConfiguration.get(context);
+        mScroller = new OverScroller(context);
+        mTouchSlop = configuration.getScaledTouchSlop();
+        mMinimumVelocity = configuration.getScaledMinimumFlingVelocity();
+        mMaximumVelocity = configuration.getScaledMaximumFlingVelocity();
+
+        mHeaderView = new RowView(context, true);
+        addView(mHeaderView, new LayoutParams(LayoutParams.MATCH_PARENT, mRowHeight));
+
+        mAdapter = new RowAdapter();
+        mRecyclerView = new RecyclerView(context);
+        mRecyclerView.setLayoutManager(new LinearLayoutManager(context));
+        mRecyclerView.setHasFixedSize(true);
+        mRecyclerView.setAdapter(mAdapter);
+        addView(mRecyclerView, new LayoutParams(LayoutParams.MATCH_PARENT, 0, 1));
+    }
+
+    /**
+     * @param reportTable table to show or null.
+     * @param columnLefts widths of columns measured by {@link #measureColumns(Context,
+     *                    ReportTable)}, on background thread.
+     */
+    public void setReportTable(ReportTable reportTable, int[] columnLefts) {
+        if (reportTable != null && (columnLefts == null ||
+                columnLefts.length != reportTable.getColumnCount() + 1)) {
+            throw new IllegalArgumentException("Columns are not measured for given table");
+        }
+
+        mReportTable = reportTable;
+        mColumnLefts = reportTable == null ? null : columnLefts;
+        mOffset = 0;
+        mScroller.forceFinished(true);
+
+        updateFrozenCount();
+        mHeaderView.setCells(reportTable == null ? null : reportTable.getHeaders());
+        mAdapter.notifyDataSetChanged();
+    }
+
+    public ReportTable getReportTable() {
+        return mReportTable;
+    }
+
+    /**
+     * Measures columns in the same text style which is used for drawing. Text of every
+     * column of first rows is measured, so it has to be done on background thread.
+     *
+     * @return left edges of columns, the last value is width of the whole table.
+     */
+    public static int[] measureColumns(Context context, ReportTable reportTable) {
+        Resources resources = context.getResources();
+        TextPaint textPaint = newTextPaint(resources, false);
+        TextPaint headerTextPaint = newTextPaint(resources, true);
+        int cellPadding = dpToPx(resources, CELL_PADDING_DP);
+        int minColumnWidth = dpToPx(resources, MIN_COLUMN_WIDTH_DP);
+        int maxColumnWidth = dpToPx(resources, MAX_COLUMN_WIDTH_DP);
+
+        String[] headers = reportTable.getHeaders();
+        List<String[]> rows = reportTable.getRows();
+        int measuredRows = Math.min(MEASURED_ROWS, rows.size());
+
+        int[] columnLefts = new int[headers.length + 1];
+        for (int column = 0; column < headers.length; column++) {
+            float textWidth = headerTextPaint.measureText(headers[column]);
+            for (int row = 0; row < measuredRows; row++) {
+                textWidth = Math.max(textWidth, textPaint.measureText(rows.get(row)[column]));
+            }
+
+            int width = (int) Math.ceil(textWidth) + cellPadding * 2;
+            width = Math.max(minColumnWidth, Math.min(maxColumnWidth, width));
+            columnLefts[column + 1] = columnLefts[column] + width;
+        }
+        return columnLefts;
+    }
+
+    /* dimension columns are frozen as long as they leave enough space for values */
+    private void updateFrozenCount() {
+        mFrozenCount = 0;
+        if (mReportTable == null) {
+            return;
+        }
+
+        int maxFrozenWidth = getWidth() / 2;
+        while (mFrozenCount < mReportTable.getDimensionCount() &&
+                mColumnLefts[mFrozenCount + 1] <= maxFrozenWidth) {
+            mFrozenCount++;
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        updateFrozenCount();
+        setOffset(mOffset);
+    }
+
+    private int getMaxOffset() {
+        if (mColumnLefts == null) {
+            return 0;
+        }
+        return Math.max(0, mColumnLefts[mColumnLefts.length - 1] - getWidth());
+    }
+
+    private void setOffset(int offset) {
+        offset = Math.max(0, Math.min(getMaxOffset(), offset));
+        if (offset == mOffset) {
+            return;
+        }
+
+        mOffset = offset;
+        mHeaderView.invalidate();
+        for (int index = 0; index < mRecyclerView.getChildCount(); index++) {
+            mRecyclerView.getChildAt(index).invalidate();
+        }
+    }
+
+    @Override
+    public void computeScroll() {
+        if (mScroller.computeScrollOffset()) {
+            setOffset(mScroller.getCurrX());
+            ViewCompat.postInvalidateOnAnimation(this);
+        }
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent event) {
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        }
+        mVelocityTracker.addMovement(event);
+
+        boolean isHandled = super.dispatchTouchEvent(event);
+
+        int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+        return isHandled;
+    }
+
+    /* vertical gestures are left to RecyclerView, horizontal ones are taken over */
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN: {
+                onDown(event);
+                break;
+            }
+            case MotionEvent.ACTION_MOVE: {
+                startDraggingIfNeeded(event);
+                break;
+            }
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL: {
+                mIsDragging = false;
+                break;
+            }
+        }
+        return mIsDragging;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN: {
+                onDown(event);
+                break;
+            }
+            case MotionEvent.ACTION_MOVE: {
+                startDraggingIfNeeded(event);
+                if (mIsDragging) {
+                    int dx = (int) (mLastX - event.getX());
+                    setOffset(mOffset + dx);
+                    mLastX -= dx;
+                }
+                break;
+            }
+            case MotionEvent.ACTION_UP: {
+                if (mIsDragging) {
+                    mVelocityTracker.computeCurrentVelocity(1000, mMaximumVelocity);
+                    int velocity = (int) mVelocityTracker.getXVelocity();
+                    if (Math.abs(velocity) > mMinimumVelocity) {
+                        mScroller.fling(mOffset, 0, -velocity, 0, 0, getMaxOffset(), 0, 0);
+                        ViewCompat.postInvalidateOnAnimation(this);
+                    }
+                }
+                mIsDragging = false;
+                break;
+            }
+            case MotionEvent.ACTION_CANCEL: {
+                mIsDragging = false;
+                break;
+            }
+        }
+        return true;
+    }
+
+    private void onDown(MotionEvent event) {
+        mDownX = mLastX = event.getX();
+        mDownY = event.getY();
+
+        // touching table while it is flung catches it
+        mIsDragging = !mScroller.isFinished();
+        mScroller.forceFinished(true);
+    }
+
+    private void startDraggingIfNeeded(MotionEvent event) {
+        if (mIsDragging) {
+            return;
+        }
+
+        float dx = Math.abs(event.getX() - mDownX);
+        float dy = Math.abs(event.getY() - mDownY);
+        if (dx > mTouchSlop && dx > dy) {
+            mIsDragging = true;
+            mLastX = event.getX();
+            getParent().requestDisallowInterceptTouchEvent(true);
+        }
+    }
+
+    private static int dpToPx(Resources resources, int dp) {
+        return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
+                dp, resources.getDisplayMetrics());
+    }
+
+    /* paints are created per thread, measuring in background never touches view's ones */
+    private static TextPaint newTextPaint(Resources resources, boolean isHeader) {
+        TextPaint textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        textPaint.setColor(TEXT_COLOR);
+        textPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP,
+                TEXT_SIZE_SP, resources.getDisplayMetrics()));
+        if (isHeader) {
+            textPaint.setTypeface(Typeface.DEFAULT_BOLD);
+        }
+        return textPaint;
+    }
+
+    /**
+     * Draws cells of one row, taking horizontal offset of table into account.
+     */
+    private class RowView extends View {
+        private final boolean mIsHeader;
+        private String[] mCells;
+
+        RowView(Context context, boolean isHeader) {
+            super(context);
+            mIsHeader = isHeader;
+        }
+
+        void setCells(String[] cells) {
+            mCells = cells;
+            invalidate();
+        }
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            if (mCells == null || mColumnLefts == null) {
+                return;
+            }
+
+            int width = getWidth();
+            int height = getHeight();
+            int frozenWidth = mColumnLefts[mFrozenCount];
+
+            if (mIsHeader) {
+                canvas.drawRect(0, 0, width, height, mHeaderBackgroundPaint);
+            }
+
+            // column which is partially hidden behind frozen ones
+            int column = Arrays.binarySearch(mColumnLefts, mOffset + frozenWidth);
+            column = column < 0 ? -column - 2 : column;
+            column = Math.max(mFrozenCount, column);
+
+            for (; column < mCells.length && mColumnLefts[column] - mOffset < width; column++) {
+                drawCell(canvas, column, mColumnLefts[column] - mOffset, height);
+            }
+
+            if (mFrozenCount > 0) {
+                canvas.drawRect(0, 0, frozenWidth, height,
+                        mIsHeader ? mHeaderBackgroundPaint : mBackgroundPaint);
+                for (column = 0; column < mFrozenCount; column++) {
+                    drawCell(canvas, column, mColumnLefts[column], height);
+                }
+                canvas.drawLine(frozenWidth, 0, frozenWidth, height, mDividerPaint);
+            }
+
+            canvas.drawLine(0, height - 1, width, height - 1, mDividerPaint);
+        }
+
+        private void drawCell(Canvas canvas, int column, int left, int height) {
+            int right = left + mColumnLefts[column + 1] - mColumnLefts[column];
+            TextPaint paint = mIsHeader ? mHeaderTextPaint : mTextPaint;
+            String text = mCells[column];
+
+            // values are aligned to the right, so that digits line up
+            float x = column < mReportTable.getDimensionCount() ? left + mCellPadding :
+                    right - mCellPadding - paint.measureText(text);
+
+            canvas.save();
+            canvas.clipRect(left, 0, right, height);
+            canvas.drawText(text, Math.max(left + mCellPadding, x), mTextBaseline, paint);
+            canvas.restore();
+        }
+    }
+
+    private class RowAdapter extends RecyclerView.Adapter<RowHolder> {
+
+        @Override
+        public RowHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            RowView rowView = new RowView(parent.getContext(), false);
+            rowView.setLayoutParams(new RecyclerView.LayoutParams(
+                    RecyclerView.LayoutParams.MATCH_PARENT, mRowHeight));
+            return new RowHolder(rowView);
+        }
+
+        @Override
+        public void onBindViewHolder(RowHolder holder, int position) {
+            ((RowView) holder.itemView).setCells(mReportTable.getRows().get(position));
+        }
+
+        @Override
+        public int getItemCount() {
+            return mReportTable == null ? 0 : mReportTable.getRows().size();
+        }
+    }
+
+    private static class RowHolder extends RecyclerView.ViewHolder {
+
+        RowHolder(View itemView) {
+            super(itemView);
+        }
+    }
+}
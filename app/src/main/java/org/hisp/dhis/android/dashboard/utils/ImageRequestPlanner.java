@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.utils;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.DisplayMetrics;
+
+import org.joda.time.DateTime;
+
+/**
+ * Decides which size of chart image should be requested from server for given cell
+ * of dashboard grid. Sizes are rounded up to a few fixed widths, so images can
+ * be reused from cache between different screens and orientations.
+ */
+public final class ImageRequestPlanner {
+    /* widths of images which can be requested from server, in pixels */
+    private static final int[] WIDTHS = {320, 480, 640, 960, 1280, 1920, 2560};
+
+    /* images shown without zoom are never larger than this */
+    private static final int MAX_UNZOOMED_WIDTH = 1280;
+
+    /* server renders text in pixels, so image should not be much denser than this */
+    private static final float MAX_SCALE = 1.5f;
+
+    /* charts are rendered with the same aspect ratio as before (480x320) */
+    private static final int ASPECT_WIDTH = 3;
+    private static final int ASPECT_HEIGHT = 2;
+
+    private final int mSpanCount;
+    private final int mScreenWidthDp;
+    private final int mScreenLongestSideDp;
+    private final float mScale;
+
+    public ImageRequestPlanner(Context context, int spanCount) {
+        Configuration configuration = context.getResources().getConfiguration();
+        DisplayMetrics displayMetrics = context.getResources().getDisplayMetrics();
+
+        mSpanCount = Math.max(spanCount, 1);
+        mScreenWidthDp = configuration.screenWidthDp;
+        mScreenLongestSideDp = Math.max(configuration.screenWidthDp,
+                configuration.screenHeightDp);
+        mScale = Math.min(displayMetrics.density, MAX_SCALE);
+    }
+
+    /**
+     * @param spanSize number of grid columns which are occupied by image.
+     */
+    public String buildImageUrl(String resource, String uid,
+                                DateTime lastUpdated, int spanSize) {
+        int cellWidthDp = mScreenWidthDp * Math.min(spanSize, mSpanCount) / mSpanCount;
+        return buildImageUrlForWidth(resource, uid, lastUpdated,
+                Math.min(toPixels(cellWidthDp), MAX_UNZOOMED_WIDTH));
+    }
+
+    /**
+     * Builds URL to image which is shown across the whole screen in any orientation.
+     */
+    public String buildFullScreenImageUrl(String resource, String uid, DateTime lastUpdated) {
+        return buildImageUrlForWidth(resource, uid, lastUpdated,
+                Math.min(toPixels(mScreenLongestSideDp), MAX_UNZOOMED_WIDTH));
+    }
+
+    /**
+     * Builds URL to image which is at least as wide as given width in pixels
+     * (or as wide as server can render, if given width is larger than that).
+     */
+    public String buildImageUrlForWidth(String resource, String uid,
+                                        DateTime lastUpdated, int width) {
+        int bucketWidth = getBucketWidth(width);
+        return PicassoProvider.buildImageUrl(resource, uid, lastUpdated,
+                bucketWidth, getHeight(bucketWidth));
+    }
+
+    /* returns the smallest fixed width which is not smaller than given one */
+    public static int getBucketWidth(int width) {
+        for (int bucketWidth : WIDTHS) {
+            if (bucketWidth >= width) {
+                return bucketWidth;
+            }
+        }
+        return WIDTHS[WIDTHS.length - 1];
+    }
+
+    public static int getHeight(int width) {
+        return width * ASPECT_HEIGHT / ASPECT_WIDTH;
+    }
+
+    private int toPixels(int dp) {
+        return Math.round(dp * mScale);
+    }
+}
@@ -28,14 +28,49 @@
 
 package org.hisp.dhis.android.dashboard.utils;
 
+import android.app.ActivityManager;
 import android.content.Context;
 
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import com.squareup.picasso.LruCache;
 import com.squareup.picasso.OkHttpDownloader;
 import com.squareup.picasso.Picasso;
 
+import org.hisp.dhis.android.dashboard.sync.OfflinePack;
+import org.hisp.dhis.android.sdk.core.api.Dhis2;
 import org.hisp.dhis.android.sdk.core.network.RepositoryManager;
+import org.joda.time.DateTime;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import okio.Okio;
 
 public final class PicassoProvider {
+    private static final String IMAGE_CACHE_DIR = "images";
+    private static final long IMAGE_CACHE_SIZE = 50 * 1024 * 1024;
+
+    /* part of memory class given to decoded bitmaps */
+    private static final int MEMORY_CACHE_FRACTION = 7;
+
+    /**
+     * Query parameter which is used only as a part of cache key.
+     * It is removed from request before it goes to server.
+     */
+    private static final String VERSION = "v";
+    private static final String CACHE_CONTROL_VERSIONED = "public, max-age=31536000";
+    private static final MediaType IMAGE_PNG = MediaType.parse("image/png");
+
+    private static OkHttpClient mOkHttpClient;
     private static Picasso mPicasso;
 
     private PicassoProvider() {
@@ -43,13 +78,146 @@ public final class PicassoProvider {
 
     public static Picasso getInstance(Context context) {
         if (mPicasso == null) {
-            OkHttpDownloader okHttpDownloader = new OkHttpDownloader(
-                    RepositoryManager.provideOkHttpClient());
-            mPicasso = new Picasso.Builder(context)
-                    .downloader(okHttpDownloader)
+            Context appContext = context.getApplicationContext();
+            mPicasso = new Picasso.Builder(appContext)
+                    .downloader(new OkHttpDownloader(getOkHttpClient(appContext)))
+                    .memoryCache(new LruCache(calculateMemoryCacheSize(appContext)))
                     .build();
         }
 
         return mPicasso;
     }
+
+    /**
+     * Returns client which shares disk cache with Picasso. Can be used in order
+     * to download images which should not be decoded by Picasso as a whole.
+     */
+    public static OkHttpClient getOkHttpClient(Context context) {
+        if (mOkHttpClient == null) {
+            mOkHttpClient = RepositoryManager.provideOkHttpClient().clone();
+            mOkHttpClient.setCache(new Cache(new File(context.getApplicationContext()
+                    .getCacheDir(), IMAGE_CACHE_DIR), IMAGE_CACHE_SIZE));
+            mOkHttpClient.interceptors().add(new OfflinePackInterceptor());
+            mOkHttpClient.networkInterceptors().add(new VersionInterceptor());
+        }
+
+        return mOkHttpClient;
+    }
+
+    /**
+     * Builds URL to rendered image of given chart, event chart or map. Images are kept in
+     * memory and on disk until lastUpdated of item which contains them changes.
+     *
+     * @param resource    resource name in API: charts, eventCharts or maps.
+     * @param uid         uid of element.
+     * @param lastUpdated last time when item containing element was updated.
+     * @param width       width of image in pixels.
+     * @param height      height of image in pixels.
+     */
+    public static String buildImageUrl(String resource, String uid, DateTime lastUpdated,
+                                       int width, int height) {
+        HttpUrl.Builder builder = Dhis2.getServerUrl().newBuilder()
+                .addPathSegment("api").addPathSegment(resource).addPathSegment(uid).addPathSegment("data.png")
+                .addQueryParameter("width", Integer.toString(width))
+                .addQueryParameter("height", Integer.toString(height));
+        if (lastUpdated != null) {
+            builder.addQueryParameter(VERSION, Long.toString(lastUpdated.getMillis()));
+        }
+        return builder.toString();
+    }
+
+    private static int calculateMemoryCacheSize(Context context) {
+        ActivityManager activityManager = (ActivityManager)
+                context.getSystemService(Context.ACTIVITY_SERVICE);
+        return activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CACHE_FRACTION;
+    }
+
+    /**
+     * Server renders images on each request and does not allow to cache them.
+     * Versioned images are stored in cache for as long as their version is the same,
+     * so they are served without network request (and also offline).
+     */
+    private static class VersionInterceptor implements Interceptor {
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            HttpUrl url = request.httpUrl();
+
+            if (url.queryParameter(VERSION) == null) {
+                return chain.proceed(request);
+            }
+
+            Response response = chain.proceed(request.newBuilder()
+                    .url(url.newBuilder().removeAllQueryParameters(VERSION).build())
+                    .build());
+            if (!response.isSuccessful()) {
+                return response;
+            }
+
+            return response.newBuilder()
+                    .removeHeader("Pragma")
+                    .removeHeader("Expires")
+                    .header("Cache-Control", CACHE_CONTROL_VERSIONED)
+                    .build();
+        }
+    }
+
+    /**
+     * Serves images of dashboards which are kept offline, when they
+     * can be neither downloaded nor found in cache.
+     */
+    private static class OfflinePackInterceptor implements Interceptor {
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                Response fallback = getFallback(request);
+                if (fallback == null) {
+                    throw e;
+                }
+                return fallback;
+            }
+
+            if (response.isSuccessful()) {
+                return response;
+            }
+
+            Response fallback = getFallback(request);
+            if (fallback == null) {
+                return response;
+            }
+
+            response.body().close();
+            return fallback;
+        }
+
+        /* image urls end with {resource}/{uid}/data.png */
+        private static Response getFallback(Request request) {
+            List<String> segments = request.httpUrl().pathSegments();
+            int size = segments.size();
+            if (size < 3 || !"data.png".equals(segments.get(size - 1))) {
+                return null;
+            }
+
+            File image = OfflinePack.getInstance()
+                    .getImage(segments.get(size - 3), segments.get(size - 2));
+            if (image == null) {
+                return null;
+            }
+
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .body(ResponseBody.create(IMAGE_PNG, image.length(),
+                            Okio.buffer(Okio.source(image))))
+                    .build();
+        }
+    }
 }
@@ -0,0 +1,434 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.utils;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import org.hisp.dhis.android.sdk.core.api.Dhis2;
+import org.hisp.dhis.android.sdk.core.network.APIException;
+import org.hisp.dhis.android.sdk.core.network.RepositoryManager;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import retrofit.client.Header;
+
+import static org.hisp.dhis.android.sdk.models.utils.Preconditions.isNull;
+
+/**
+ * Keeps the latest downloaded data of report tables on disk, together with ETag and
+ * Last-Modified validators sent by server. Each time report table is requested, server
+ * is asked only whether it has changed: if it has not (304), data is served from disk.
+ * Total size of cache is bounded, the least recently used report tables are evicted first.
+ */
+public final class ReportTableCache {
+    public static final String HTML = "html";
+    public static final String JSON = "json";
+    public static final long DEFAULT_MAX_SIZE = 10 * 1024 * 1024;
+
+    private static final String CACHE_DIR = "report-tables";
+    private static final String INDEX = "index.json";
+    private static final String KEY = "key";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String SIZE = "size";
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /* validated entries only change access order, which is not worth rewriting
+    index on every request; it is written at most once within this interval */
+    private static final long INDEX_WRITE_INTERVAL = 30 * 1000;
+
+    private static ReportTableCache mReportTableCache;
+
+    private final File mDirectory;
+
+    /* entries in access order, the eldest one is evicted first */
+    private final LinkedHashMap<String, Entry> mEntries;
+    private long mMaxSize;
+    private long mSize;
+
+    /* index is read lazily by the first caller, which is always on background thread */
+    private boolean mIsIndexRead;
+    private long mIndexWrittenAt;
+
+    private int mHitCount;
+    private int mMissCount;
+
+    private ReportTableCache(Context context) {
+        this(new File(context.getCacheDir(), CACHE_DIR));
+    }
+
+    ReportTableCache(File directory) {
+        mDirectory = directory;
+        mEntries = new LinkedHashMap<>(16, 0.75f, true);
+        mMaxSize = DEFAULT_MAX_SIZE;
+    }
+
+    public static void init(Context context) {
+        isNull(context, "Context must not be null");
+
+        if (mReportTableCache == null) {
+            mReportTableCache = new ReportTableCache(context.getApplicationContext());
+        }
+    }
+
+    public static ReportTableCache getInstance() {
+        if (mReportTableCache == null) {
+            throw new IllegalStateException("ReportTableCache must be initialized first");
+        }
+
+        return mReportTableCache;
+    }
+
+    /**
+     * Returns up to date data of report table, downloading it only if it has changed
+     * on server since the last request. Has to be called on background thread.
+     *
+     * @param uid    uid of report table.
+     * @param format {@link #HTML} or {@link #JSON}.
+     * @return file with data of report table.
+     * @throws APIException if data can't be retrieved from server, with status code
+     *                      of response if server has responded.
+     * @throws IOException  if data can't be stored on disk.
+     */
+    public File get(String uid, String format) throws IOException, APIException {
+        return get(RepositoryManager.provideOkHttpClient(), Dhis2.getServerUrl(), uid, format);
+    }
+
+    File get(OkHttpClient client, HttpUrl serverUrl, String uid, String format)
+            throws IOException, APIException {
+        String key = uid + "." + format;
+
+        Entry entry;
+        synchronized (this) {
+            readIndexIfNeeded();
+            entry = mEntries.get(key);
+            if (entry != null && !getFile(key).exists()) {
+                removeEntry(key);
+                entry = null;
+            }
+        }
+
+        HttpUrl url = serverUrl.newBuilder()
+                .addPathSegment("api").addPathSegment("reportTables")
+                .addPathSegment(uid).addPathSegment("data." + format)
+                .build();
+        Request.Builder request = new Request.Builder()
+                .url(url)
+                .get();
+        if (entry != null && entry.etag != null) {
+            request.header("If-None-Match", entry.etag);
+        }
+        if (entry != null && entry.lastModified != null) {
+            request.header("If-Modified-Since", entry.lastModified);
+        }
+
+        Response response;
+        try {
+            response = client.newCall(request.build()).execute();
+        } catch (IOException e) {
+            throw APIException.networkError(url.toString(), e);
+        }
+
+        if (entry != null && response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            response.body().close();
+            synchronized (this) {
+                // touching entry also moves it to the end of access order
+                if (mEntries.get(key) != null) {
+                    mHitCount++;
+                    if (SystemClock.elapsedRealtime() - mIndexWrittenAt > INDEX_WRITE_INTERVAL) {
+                        writeIndex();
+                    }
+                    return getFile(key);
+                }
+            }
+            throw new IOException("Entry was evicted while being validated: " + key);
+        }
+
+        if (!response.isSuccessful()) {
+            response.body().close();
+            throw APIException.httpError(url.toString(), new retrofit.client.Response(
+                    url.toString(), response.code(), response.message(),
+                    Collections.<Header>emptyList(), null));
+        }
+
+        File tempFile = File.createTempFile(key, ".tmp", mkdirs());
+        try {
+            try {
+                copy(response.body().byteStream(), tempFile);
+            } catch (IOException e) {
+                // connection broke while body was read
+                throw APIException.networkError(url.toString(), e);
+            }
+
+            synchronized (this) {
+                mMissCount++;
+                removeEntry(key);
+
+                File file = getFile(key);
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException("Failed to store " + key);
+                }
+
+                Entry newEntry = new Entry(key, response.header("ETag"),
+                        response.header("Last-Modified"), file.length());
+                mEntries.put(key, newEntry);
+                mSize += newEntry.size;
+
+                trimToSize(key);
+                writeIndex();
+                return file;
+            }
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Returns data of report table downloaded before, without asking server.
+     *
+     * @return file or null if report table is not in cache.
+     */
+    public synchronized File getCached(String uid, String format) {
+        readIndexIfNeeded();
+        String key = uid + "." + format;
+        if (mEntries.get(key) == null) {
+            return null;
+        }
+
+        File file = getFile(key);
+        return file.exists() ? file : null;
+    }
+
+    public synchronized void setMaxSize(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Max size must not be negative");
+        }
+
+        mMaxSize = maxSize;
+        readIndexIfNeeded();
+        trimToSize(null);
+        writeIndex();
+    }
+
+    public synchronized long getSize() {
+        readIndexIfNeeded();
+        return mSize;
+    }
+
+    /**
+     * @return number of requests which were served from disk.
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return number of requests for which data had to be downloaded.
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /* removes every file in cache directory, so index does not have to be read first */
+    public synchronized void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        mEntries.clear();
+        mSize = 0;
+        mIsIndexRead = true;
+    }
+
+    private File getFile(String key) {
+        return new File(mDirectory, key);
+    }
+
+    private File mkdirs() {
+        if (!mDirectory.exists()) {
+            mDirectory.mkdirs();
+        }
+        return mDirectory;
+    }
+
+    private void removeEntry(String key) {
+        Entry entry = mEntries.remove(key);
+        if (entry != null) {
+            mSize -= entry.size;
+            getFile(key).delete();
+        }
+    }
+
+    /* entry which has just been requested is kept even if it does not fit alone */
+    private void trimToSize(String keptKey) {
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (entry.key.equals(keptKey)) {
+                continue;
+            }
+
+            iterator.remove();
+            mSize -= entry.size;
+            getFile(entry.key).delete();
+        }
+    }
+
+    private static void copy(InputStream in, File file) throws IOException {
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void readIndexIfNeeded() {
+        if (!mIsIndexRead) {
+            mIsIndexRead = true;
+            readIndex();
+        }
+    }
+
+    private void readIndex() {
+        File index = new File(mDirectory, INDEX);
+        if (!index.exists()) {
+            return;
+        }
+
+        try {
+            StringBuilder builder = new StringBuilder();
+            Reader reader = new InputStreamReader(new FileInputStream(index), "UTF-8");
+            try {
+                char[] buffer = new char[BUFFER_SIZE];
+                int count;
+                while ((count = reader.read(buffer)) != -1) {
+                    builder.append(buffer, 0, count);
+                }
+            } finally {
+                reader.close();
+            }
+
+            /* entries are stored from the least to the most recently used */
+            JSONArray entries = new JSONArray(builder.toString());
+            for (int position = 0; position < entries.length(); position++) {
+                JSONObject json = entries.getJSONObject(position);
+                Entry entry = new Entry(json.getString(KEY), json.optString(ETAG, null),
+                        json.optString(LAST_MODIFIED, null), json.getLong(SIZE));
+                mEntries.put(entry.key, entry);
+                mSize += entry.size;
+            }
+        } catch (IOException | JSONException e) {
+            // cache will be filled again
+            e.printStackTrace();
+            clear();
+        }
+    }
+
+    private void writeIndex() {
+        File index = new File(mkdirs(), INDEX);
+        File tempIndex = new File(mDirectory, INDEX + ".tmp");
+        try {
+            List<Entry> entries = new ArrayList<>(mEntries.values());
+            JSONArray json = new JSONArray();
+            for (Entry entry : entries) {
+                json.put(new JSONObject()
+                        .put(KEY, entry.key)
+                        .put(ETAG, entry.etag)
+                        .put(LAST_MODIFIED, entry.lastModified)
+                        .put(SIZE, entry.size));
+            }
+
+            Writer writer = new OutputStreamWriter(new FileOutputStream(tempIndex), "UTF-8");
+            try {
+                writer.write(json.toString());
+            } finally {
+                writer.close();
+            }
+
+            if (!tempIndex.renameTo(index)) {
+                tempIndex.delete();
+            }
+            mIndexWrittenAt = SystemClock.elapsedRealtime();
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+            tempIndex.delete();
+        }
+    }
+
+    private static class Entry {
+        final String key;
+        final String etag;
+        final String lastModified;
+        final long size;
+
+        Entry(String key, String etag, String lastModified, long size) {
+            this.key = key;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.ui.adapters;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ListDiffTest {
+    private static final ListDiff.Callback<Item> CALLBACK = new ListDiff.Callback<Item>() {
+        @Override
+        public long getStableId(Item item) {
+            return item.id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(Item oldItem, Item newItem) {
+            return oldItem.content.equals(newItem.content);
+        }
+    };
+
+    @Test
+    public void removesRunsOfItems() {
+        Replay replay = replay(items(1, 2, 3, 4, 5, 6), items(1, 4, 6));
+
+        assertEquals(Arrays.asList("remove 4 1", "remove 1 2"), replay.operations);
+    }
+
+    @Test
+    public void insertsRunsOfItems() {
+        Replay replay = replay(items(2, 5), items(1, 2, 3, 4, 5, 6));
+
+        assertEquals(Arrays.asList("insert 0 1", "insert 2 2", "insert 5 1"), replay.operations);
+    }
+
+    @Test
+    public void movesOnlyItemsOutsideLongestIncreasingSubsequence() {
+        assertEquals(Collections.singletonList("move 4 0"),
+                replay(items(1, 2, 3, 4, 5), items(5, 1, 2, 3, 4)).operations);
+        assertEquals(Collections.singletonList("move 0 4"),
+                replay(items(1, 2, 3, 4, 5), items(2, 3, 4, 5, 1)).operations);
+        assertEquals(2, replay(items(1, 2, 3, 4, 5), items(2, 1, 4, 3, 5)).moveCount);
+        assertEquals(4, replay(items(1, 2, 3, 4, 5), items(5, 4, 3, 2, 1)).moveCount);
+    }
+
+    @Test
+    public void reportsChangedItemsAtNewPositions() {
+        List<Item> oldList = items(1, 2, 3, 4);
+        List<Item> newList = items(4, 1, 2, 3);
+        newList.set(0, new Item(4, "changed"));
+        newList.set(1, new Item(1, "changed"));
+        newList.set(3, new Item(3, "changed"));
+
+        Replay replay = replay(oldList, newList);
+
+        assertEquals(Arrays.asList("move 3 0", "change 0 2", "change 3 1"), replay.operations);
+    }
+
+    @Test
+    public void identicalListsProduceNoOperations() {
+        assertTrue(replay(items(1, 2, 3), items(1, 2, 3)).operations.isEmpty());
+    }
+
+    @Test
+    public void listsWithoutUniqueStableIdsCannotBeDiffed() {
+        assertNull(ListDiff.calculate(items(1, 2, 1), items(1, 2), CALLBACK));
+        assertNull(ListDiff.calculate(items(1, 2), items(-1, 2), CALLBACK));
+    }
+
+    @Test
+    public void randomEditsTurnOldListIntoNewListWithFewestMoves() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            List<Item> oldList = randomItems(random);
+            List<Item> newList = randomItems(random);
+
+            Replay replay = replay(oldList, newList);
+
+            assertEquals(countMisplaced(oldList, newList), replay.moveCount);
+        }
+    }
+
+    /* applies operations to old list and checks that result matches new list */
+    private static Replay replay(List<Item> oldList, List<Item> newList) {
+        ListDiff diff = ListDiff.calculate(oldList, newList, CALLBACK);
+        assertNotNull(diff);
+
+        Set<Long> oldIds = ids(oldList);
+        Replay replay = new Replay(oldList);
+        diff.dispatchUpdatesTo(replay);
+
+        assertEquals(newList.size(), replay.items.size());
+        for (int position = 0; position < newList.size(); position++) {
+            Item item = replay.items.get(position);
+            Item newItem = newList.get(position);
+            if (item == null) {
+                assertFalse("Item was inserted in place of old one: " + newItem.id,
+                        oldIds.contains(newItem.id));
+                continue;
+            }
+
+            assertEquals(newItem.id, item.id);
+            assertEquals(!item.content.equals(newItem.content),
+                    replay.changed.contains(position));
+        }
+        return replay;
+    }
+
+    /* number of kept items which are not in the longest run of items keeping their order */
+    private static int countMisplaced(List<Item> oldList, List<Item> newList) {
+        List<Integer> newPositions = new ArrayList<>();
+        for (Item item : oldList) {
+            for (int position = 0; position < newList.size(); position++) {
+                if (newList.get(position).id == item.id) {
+                    newPositions.add(position);
+                }
+            }
+        }
+
+        int[] lengths = new int[newPositions.size()];
+        int longest = 0;
+        for (int index = 0; index < lengths.length; index++) {
+            lengths[index] = 1;
+            for (int previous = 0; previous < index; previous++) {
+                if (newPositions.get(previous) < newPositions.get(index)) {
+                    lengths[index] = Math.max(lengths[index], lengths[previous] + 1);
+                }
+            }
+            longest = Math.max(longest, lengths[index]);
+        }
+        return newPositions.size() - longest;
+    }
+
+    private static List<Item> items(long... ids) {
+        List<Item> items = new ArrayList<>();
+        for (long id : ids) {
+            items.add(new Item(id, "content" + id));
+        }
+        return items;
+    }
+
+    private static List<Item> randomItems(Random random) {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 0; id < 20; id++) {
+            if (random.nextBoolean()) {
+                ids.add(id);
+            }
+        }
+        Collections.shuffle(ids, random);
+
+        List<Item> items = new ArrayList<>();
+        for (long id : ids) {
+            items.add(new Item(id, "content" + random.nextInt(2)));
+        }
+        return items;
+    }
+
+    private static Set<Long> ids(List<Item> items) {
+        Set<Long> ids = new HashSet<>();
+        for (Item item : items) {
+            ids.add(item.id);
+        }
+        return ids;
+    }
+
+    private static final class Item {
+        final long id;
+        final String content;
+
+        Item(long id, String content) {
+            this.id = id;
+            this.content = content;
+        }
+    }
+
+    /* inserted items are null; changes are dispatched last, so their positions are final */
+    private static final class Replay implements ListDiff.UpdateCallback {
+        final List<Item> items;
+        final Set<Integer> changed = new HashSet<>();
+        final List<String> operations = new ArrayList<>();
+        int moveCount;
+
+        Replay(List<Item> oldList) {
+            items = new ArrayList<>(oldList);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            operations.add("remove " + position + " " + count);
+            items.subList(position, position + count).clear();
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            operations.add("insert " + position + " " + count);
+            items.addAll(position, Collections.<Item>nCopies(count, null));
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            operations.add("move " + fromPosition + " " + toPosition);
+            items.add(toPosition, items.remove(fromPosition));
+            moveCount++;
+        }
+
+        @Override
+        public void onChanged(int position, int count) {
+            operations.add("change " + position + " " + count);
+            for (int index = position; index < position + count; index++) {
+                changed.add(index);
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.ui.adapters;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SearchIndexTest {
+    private static final SearchIndex.Cancellable NOT_CANCELLED = new SearchIndex.Cancellable() {
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    private static final List<String> LABELS = Arrays.asList(
+            "Malaria cases by district",
+            "Cases of malaria",
+            "Antimalarial drugs",
+            "Malaria",
+            "Malaria cases",
+            "ANC 1st visit",
+            "ANC 2nd visit");
+
+    @Test
+    public void labelsStartingWithQueryGoFirst() {
+        SearchIndex<String> index = newIndex(LABELS);
+
+        assertEquals(Arrays.asList("Malaria", "Malaria cases",
+                "Malaria cases by district", "Cases of malaria"), search(index, "malaria"));
+    }
+
+    @Test
+    public void firstWordsAndShorterLabelsRankHigher() {
+        SearchIndex<String> index = newIndex(LABELS);
+
+        assertEquals(Arrays.asList("Malaria cases", "Cases of malaria",
+                "Malaria cases by district"), search(index, "cas mal"));
+    }
+
+    @Test
+    public void everyQueryWordHasToMatchPrefixOfWord() {
+        SearchIndex<String> index = newIndex(LABELS);
+
+        assertEquals(Arrays.asList("ANC 1st visit", "ANC 2nd visit"), search(index, "visit anc"));
+        assertEquals(Arrays.asList("ANC 1st visit"), search(index, "anc 1"));
+        assertTrue(search(index, "alaria").isEmpty());
+        assertTrue(search(index, "malaria visit").isEmpty());
+    }
+
+    @Test
+    public void searchIgnoresCaseAndPunctuation() {
+        SearchIndex<String> index = newIndex(LABELS);
+
+        assertEquals(search(index, "anc 1st"), search(index, "  ANC-1ST! "));
+    }
+
+    @Test
+    public void emptyQueryReturnsAllItems() {
+        SearchIndex<String> index = newIndex(LABELS);
+
+        assertSame(index.getItems(), index.search("", NOT_CANCELLED));
+        assertSame(index.getItems(), index.search(null, NOT_CANCELLED));
+        assertSame(index.getItems(), index.search(" - ", NOT_CANCELLED));
+    }
+
+    @Test
+    public void cancelledSearchReturnsNull() {
+        SearchIndex<String> index = newIndex(LABELS);
+
+        assertNull(index.search("malaria", new SearchIndex.Cancellable() {
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        }));
+    }
+
+    @Test
+    public void refinedResultsMatchLookUp() {
+        /* every label has several words with the same prefix, so
+        refining previous results is cheaper than looking words up */
+        List<String> labels = Arrays.asList(
+                "abc abd abe", "abd abf abg", "abx aby abz", "ab ab ab", "ac ab abc");
+        SearchIndex<String> index = newIndex(labels);
+
+        for (String query : Arrays.asList("a", "ab", "abc", "ab", "ab a", "ab ab", "ab abd")) {
+            assertEquals(query, search(newIndex(labels), query), search(index, query));
+        }
+    }
+
+    @Test
+    public void typingRandomQueriesGivesSameResultsAsFreshIndex() {
+        Random random = new Random(42);
+        String[] words = {"a", "ab", "abc", "abd", "b", "ba", "bab", "c", "cab"};
+
+        List<String> labels = new ArrayList<>();
+        for (int label = 0; label < 200; label++) {
+            StringBuilder builder = new StringBuilder();
+            for (int word = random.nextInt(4); word >= 0; word--) {
+                builder.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            labels.add(builder.toString());
+        }
+        SearchIndex<String> index = newIndex(labels);
+
+        for (int round = 0; round < 100; round++) {
+            String query = words[random.nextInt(words.length)] + " " +
+                    words[random.nextInt(words.length)];
+            /* query is typed character by character and sometimes shortened */
+            for (int length = 1; length <= query.length(); length++) {
+                if (length > 2 && random.nextInt(5) == 0) {
+                    length -= 2;
+                }
+
+                String typed = query.substring(0, length);
+                assertEquals(typed, search(newIndex(labels), typed), search(index, typed));
+            }
+        }
+    }
+
+    private static SearchIndex<String> newIndex(List<String> labels) {
+        return new SearchIndex<>(labels, labels);
+    }
+
+    private static List<String> search(SearchIndex<String> index, String query) {
+        return index.search(query, NOT_CANCELLED);
+    }
+}
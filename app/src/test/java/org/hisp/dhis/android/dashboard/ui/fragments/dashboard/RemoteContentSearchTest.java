@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.ui.fragments.dashboard;
+
+import org.hisp.dhis.android.dashboard.ui.adapters.DashboardItemSearchDialogAdapter.OptionAdapterValue;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RemoteContentSearchTest {
+
+    @Test
+    public void sortedListsAreMergedIgnoringCase() {
+        List<OptionAdapterValue> charts = values("chart", "ANC visits", "malaria", "Zinc");
+        List<OptionAdapterValue> maps = values("map", "Births", "Malaria map");
+        List<OptionAdapterValue> tables = values("table", "anc coverage", "Yellow fever");
+
+        List<OptionAdapterValue> merged = RemoteContentSearch.merge(
+                Arrays.asList(charts, maps, tables));
+
+        assertEquals(Arrays.asList("anc coverage", "ANC visits", "Births", "malaria",
+                "Malaria map", "Yellow fever", "Zinc"), labels(merged));
+    }
+
+    @Test
+    public void equalLabelsKeepOrderOfTypes() {
+        List<OptionAdapterValue> charts = values("chart", "Malaria");
+        List<OptionAdapterValue> maps = values("map", "malaria");
+        List<OptionAdapterValue> tables = values("table", "MALARIA");
+
+        List<OptionAdapterValue> merged = RemoteContentSearch.merge(
+                Arrays.asList(charts, maps, tables));
+
+        assertEquals(Arrays.asList("chart", "map", "table"), Arrays.asList(
+                merged.get(0).type, merged.get(1).type, merged.get(2).type));
+    }
+
+    @Test
+    public void emptyListsAreSkipped() {
+        List<OptionAdapterValue> charts = values("chart", "a", "c");
+        List<OptionAdapterValue> none = Collections.emptyList();
+
+        assertTrue(RemoteContentSearch.merge(
+                Collections.<List<OptionAdapterValue>>emptyList()).isEmpty());
+        assertEquals(Arrays.asList("a", "c"), labels(RemoteContentSearch.merge(
+                Arrays.asList(none, charts, none))));
+    }
+
+    @Test
+    public void inputListsAreNotModified() {
+        List<OptionAdapterValue> charts = values("chart", "b", "d");
+        List<OptionAdapterValue> maps = values("map", "a", "c");
+
+        RemoteContentSearch.merge(Arrays.asList(charts, maps));
+
+        assertEquals(Arrays.asList("b", "d"), labels(charts));
+        assertEquals(Arrays.asList("a", "c"), labels(maps));
+    }
+
+    private static List<OptionAdapterValue> values(String type, String... labels) {
+        List<OptionAdapterValue> values = new ArrayList<>();
+        for (String label : labels) {
+            values.add(new OptionAdapterValue(type + ":" + label, label, type));
+        }
+        return values;
+    }
+
+    private static List<String> labels(List<OptionAdapterValue> values) {
+        List<String> labels = new ArrayList<>();
+        for (OptionAdapterValue value : values) {
+            labels.add(value.label);
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.ui.models;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ReportTableTest {
+
+    @Test
+    public void metaColumnsGoFirstAndHiddenColumnsAreSkipped() {
+        List<ReportTable.Header> headers = Arrays.asList(
+                new ReportTable.Header("Value", "value", false, false),
+                new ReportTable.Header("Period", "pe", false, true),
+                new ReportTable.Header("Period ID", "peid", true, true),
+                new ReportTable.Header("Total", "total", false, false),
+                new ReportTable.Header("Org unit", "ou", false, true),
+                new ReportTable.Header("Hidden", "hidden", true, false));
+        List<String[]> rows = rows(new String[]{"1", "2015", "x", "3", "Oslo", "y"});
+
+        ReportTable table = ReportTable.create(headers, null, rows);
+
+        assertEquals(2, table.getDimensionCount());
+        assertEquals(4, table.getColumnCount());
+        assertArrayEquals(new String[]{"Period", "Org unit", "Value", "Total"},
+                table.getHeaders());
+        assertArrayEquals(new String[]{"2015", "Oslo", "1", "3"}, table.getRows().get(0));
+    }
+
+    @Test
+    public void headerFallsBackToNameThenToEmptyTitle() {
+        List<ReportTable.Header> headers = Arrays.asList(
+                new ReportTable.Header(null, "dx", false, true),
+                new ReportTable.Header(null, null, false, false));
+
+        ReportTable table = ReportTable.create(headers, null, rows());
+
+        assertArrayEquals(new String[]{"dx", ""}, table.getHeaders());
+    }
+
+    @Test
+    public void namesAreSubstitutedInDimensionColumnsOnly() {
+        List<ReportTable.Header> headers = Arrays.asList(
+                new ReportTable.Header("Org unit", "ou", false, true),
+                new ReportTable.Header("Data", "dx", false, true),
+                new ReportTable.Header("Value", "value", false, false));
+        Map<String, String> names = new HashMap<>();
+        names.put("ImspTQPwCqd", "Sierra Leone");
+        names.put("42", "Forty two");
+        List<String[]> rows = rows(
+                new String[]{"ImspTQPwCqd", "unknownUid", "42"},
+                new String[]{"42", "ImspTQPwCqd", "ImspTQPwCqd"});
+
+        ReportTable table = ReportTable.create(headers, names, rows);
+
+        assertArrayEquals(new String[]{"Sierra Leone", "unknownUid", "42"},
+                table.getRows().get(0));
+        assertArrayEquals(new String[]{"Forty two", "Sierra Leone", "ImspTQPwCqd"},
+                table.getRows().get(1));
+    }
+
+    @Test
+    public void missingCellsBecomeEmpty() {
+        List<ReportTable.Header> headers = Arrays.asList(
+                new ReportTable.Header("Org unit", "ou", false, true),
+                new ReportTable.Header("Value", "value", false, false),
+                new ReportTable.Header("Total", "total", false, false));
+
+        ReportTable table = ReportTable.create(headers, null,
+                rows(new String[]{"Oslo"}, new String[]{}));
+
+        assertArrayEquals(new String[]{"Oslo", "", ""}, table.getRows().get(0));
+        assertArrayEquals(new String[]{"", "", ""}, table.getRows().get(1));
+    }
+
+    @Test
+    public void rowsAreReplacedInGivenList() {
+        List<ReportTable.Header> headers = Arrays.asList(
+                new ReportTable.Header("Value", "value", false, false),
+                new ReportTable.Header("Org unit", "ou", false, true));
+        List<String[]> rows = rows(new String[]{"1", "Oslo"}, new String[]{"2", "Bergen"});
+
+        ReportTable table = ReportTable.create(headers, null, rows);
+
+        assertEquals(2, table.getRows().size());
+        assertSame(rows.get(1), table.getRows().get(1));
+        assertArrayEquals(new String[]{"Bergen", "2"}, rows.get(1));
+    }
+
+    private static List<String[]> rows(String[]... rows) {
+        return new ArrayList<>(Arrays.asList(rows));
+    }
+}
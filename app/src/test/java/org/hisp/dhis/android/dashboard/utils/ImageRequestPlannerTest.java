@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ImageRequestPlannerTest {
+
+    @Test
+    public void widthIsRoundedUpToBucket() {
+        assertEquals(320, ImageRequestPlanner.getBucketWidth(1));
+        assertEquals(320, ImageRequestPlanner.getBucketWidth(320));
+        assertEquals(480, ImageRequestPlanner.getBucketWidth(321));
+        assertEquals(640, ImageRequestPlanner.getBucketWidth(600));
+        assertEquals(960, ImageRequestPlanner.getBucketWidth(641));
+        assertEquals(1280, ImageRequestPlanner.getBucketWidth(1280));
+        assertEquals(1920, ImageRequestPlanner.getBucketWidth(1281));
+        assertEquals(2560, ImageRequestPlanner.getBucketWidth(2560));
+    }
+
+    @Test
+    public void widthLargerThanLargestBucketIsCapped() {
+        assertEquals(2560, ImageRequestPlanner.getBucketWidth(2561));
+        assertEquals(2560, ImageRequestPlanner.getBucketWidth(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void nonPositiveWidthGetsSmallestBucket() {
+        assertEquals(320, ImageRequestPlanner.getBucketWidth(0));
+        assertEquals(320, ImageRequestPlanner.getBucketWidth(-1));
+    }
+
+    @Test
+    public void bucketsKeepAspectRatioOfDefaultChart() {
+        assertEquals(320, ImageRequestPlanner.getHeight(480));
+        assertEquals(640, ImageRequestPlanner.getHeight(960));
+        assertEquals(1280, ImageRequestPlanner.getHeight(1920));
+    }
+
+    @Test
+    public void nearbyWidthsShareBucket() {
+        /* the same cell on screens of slightly different densities reuses one image */
+        assertEquals(ImageRequestPlanner.getBucketWidth(700),
+                ImageRequestPlanner.getBucketWidth(900));
+    }
+}
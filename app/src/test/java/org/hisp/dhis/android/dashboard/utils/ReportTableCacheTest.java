@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2015, University of Oslo
+ *
+ * All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * Neither the name of the HISP project nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.hisp.dhis.android.dashboard.utils;
+
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.hisp.dhis.android.sdk.core.network.APIException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ReportTableCacheTest {
+    private static final String LAST_MODIFIED = "Wed, 01 Jul 2015 10:00:00 GMT";
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private MockWebServer mServer;
+    private OkHttpClient mClient;
+    private File mDirectory;
+    private ReportTableCache mCache;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+        mClient = new OkHttpClient();
+        mDirectory = new File(mTemporaryFolder.getRoot(), "report-tables");
+        mCache = new ReportTableCache(mDirectory);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void unchangedTableIsServedFromDisk() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("grid")
+                .setHeader("ETag", "\"v1\"")
+                .setHeader("Last-Modified", LAST_MODIFIED));
+        mServer.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED));
+
+        File downloaded = get("a");
+        File validated = get("a");
+
+        assertEquals(downloaded, validated);
+        assertEquals("grid", read(validated));
+        assertEquals(1, mCache.getMissCount());
+        assertEquals(1, mCache.getHitCount());
+
+        RecordedRequest first = mServer.takeRequest();
+        assertEquals("/api/reportTables/a/data.json", first.getPath());
+        assertNull(first.getHeader("If-None-Match"));
+
+        RecordedRequest second = mServer.takeRequest();
+        assertEquals("\"v1\"", second.getHeader("If-None-Match"));
+        assertEquals(LAST_MODIFIED, second.getHeader("If-Modified-Since"));
+    }
+
+    @Test
+    public void changedTableIsDownloadedAgain() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("old").setHeader("ETag", "\"v1\""));
+        mServer.enqueue(new MockResponse().setBody("newer").setHeader("ETag", "\"v2\""));
+        mServer.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED));
+
+        get("a");
+        assertEquals("newer", read(get("a")));
+        get("a");
+
+        assertEquals(5, mCache.getSize());
+        assertEquals(2, mCache.getMissCount());
+        mServer.takeRequest();
+        mServer.takeRequest();
+        assertEquals("\"v2\"", mServer.takeRequest().getHeader("If-None-Match"));
+    }
+
+    @Test
+    public void leastRecentlyUsedTableIsEvicted() throws Exception {
+        mCache.setMaxSize(10);
+        enqueueBodies("aaaa", "bbbb");
+        mServer.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED));
+        enqueueBodies("cccc");
+
+        get("a");
+        get("b");
+        // validation makes a more recently used than b
+        get("a");
+        get("c");
+
+        assertEquals(8, mCache.getSize());
+        assertNotNull(mCache.getCached("a", ReportTableCache.JSON));
+        assertNull(mCache.getCached("b", ReportTableCache.JSON));
+        assertNotNull(mCache.getCached("c", ReportTableCache.JSON));
+        assertFalse(new File(mDirectory, "b.json").exists());
+    }
+
+    @Test
+    public void requestedTableIsKeptEvenIfLargerThanCache() throws Exception {
+        mCache.setMaxSize(2);
+        enqueueBodies("aaaa", "bbbb");
+
+        get("a");
+        assertEquals(4, mCache.getSize());
+        assertNotNull(mCache.getCached("a", ReportTableCache.JSON));
+
+        get("b");
+        assertEquals(4, mCache.getSize());
+        assertNull(mCache.getCached("a", ReportTableCache.JSON));
+        assertNotNull(mCache.getCached("b", ReportTableCache.JSON));
+    }
+
+    @Test
+    public void loweringMaxSizeTrimsCache() throws Exception {
+        enqueueBodies("aaaa", "bbbb", "cccc");
+        get("a");
+        get("b");
+        get("c");
+
+        mCache.setMaxSize(5);
+
+        assertEquals(4, mCache.getSize());
+        assertNull(mCache.getCached("a", ReportTableCache.JSON));
+        assertNull(mCache.getCached("b", ReportTableCache.JSON));
+        assertNotNull(mCache.getCached("c", ReportTableCache.JSON));
+    }
+
+    @Test
+    public void serverErrorKeepsCachedTable() throws Exception {
+        enqueueBodies("grid");
+        mServer.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_INTERNAL_ERROR));
+
+        get("a");
+        try {
+            get("a");
+            fail("Server error must be reported");
+        } catch (APIException expected) {
+            // data on disk is still valid
+        }
+
+        File cached = mCache.getCached("a", ReportTableCache.JSON);
+        assertNotNull(cached);
+        assertEquals("grid", read(cached));
+    }
+
+    @Test
+    public void entriesAreReadBackFromIndex() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("grid").setHeader("ETag", "\"v1\""));
+        mServer.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED));
+        get("a");
+
+        mCache = new ReportTableCache(mDirectory);
+        assertEquals(4, mCache.getSize());
+        assertEquals("grid", read(get("a")));
+
+        mServer.takeRequest();
+        assertEquals("\"v1\"", mServer.takeRequest().getHeader("If-None-Match"));
+    }
+
+    @Test
+    public void clearRemovesFilesAndIndex() throws Exception {
+        enqueueBodies("grid");
+        get("a");
+
+        mCache.clear();
+
+        assertEquals(0, mCache.getSize());
+        assertNull(mCache.getCached("a", ReportTableCache.JSON));
+        assertEquals(0, new ReportTableCache(mDirectory).getSize());
+    }
+
+    private File get(String uid) throws IOException, APIException {
+        return mCache.get(mClient, HttpUrl.get(mServer.getUrl("/")), uid, ReportTableCache.JSON);
+    }
+
+    private void enqueueBodies(String... bodies) {
+        for (String body : bodies) {
+            mServer.enqueue(new MockResponse().setBody(body));
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            char[] buffer = new char[64];
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                builder.append(buffer, 0, count);
+            }
+        } finally {
+            reader.close();
+        }
+        return builder.toString();
+    }
+}